@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2011 Peransin Nicolas.
+ * Use is subject to license terms.
+ */
+package org.mypsycho.beans;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import org.mypsycho.util.PropertiesLoader;
+
+
+/**
+ * Build step writing the compiled bundles of classes.
+ * <p>
+ * Usage: <code>BundleCompiler outputDirectory locales class...</code>, where
+ * locales is a comma separated list like <code>ROOT,fr,en_US</code> and
+ * classes may also be separated by commas.
+ * Classes and .properties files must be in the classpath. Bundles are merged
+ * as by the {@link Injector}.
+ * </p>
+ * <p>
+ * With maven, the <code>compiled-bundles</code> profile runs it in the
+ * <code>process-classes</code> phase when the <code>bundles.classes</code>
+ * property is set. Compiled bundles are read once enabled by
+ * {@link Injector#setCompiledBundles(boolean)}.
+ * </p>
+ *
+ * @author Peransin Nicolas
+ * @see Injector#writeCompiled(Class, Locale, OutputStream)
+ */
+public class BundleCompiler {
+
+    final Injector injector;
+    final File directory;
+
+    public BundleCompiler(Injector injector, File directory) {
+        this.injector = injector;
+        this.directory = directory;
+    }
+
+    /**
+     * Writes the compiled bundle of a class.
+     *
+     * @param type class of the bundle
+     * @param locale locale of the bundle
+     * @return the written file
+     * @throws IOException if writing fails
+     */
+    public File compile(Class<?> type, Locale locale) throws IOException {
+        File file = new File(directory, PropertiesLoader.getCompiledName(type, locale));
+        file.getParentFile().mkdirs();
+        OutputStream output = new FileOutputStream(file);
+        try {
+            injector.writeCompiled(type, locale, output);
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    static Locale parseLocale(String text) {
+        if ((text.length() == 0) || "ROOT".equals(text)) {
+            return Locale.ROOT;
+        }
+        String[] parts = text.split("_", 3);
+        return new Locale(parts[0], (parts.length > 1) ? parts[1] : "",
+                (parts.length > 2) ? parts[2] : "");
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: BundleCompiler outputDirectory locales class...");
+            System.exit(1);
+        }
+
+        BundleCompiler compiler = new BundleCompiler(new Injector(), new File(args[0]));
+        ClassLoader context = Thread.currentThread().getContextClassLoader();
+        for (String locale : args[1].split(",")) {
+            for (int i = 2; i < args.length; i++) {
+                for (String name : args[i].split(",")) {
+                    if (name.trim().length() > 0) {
+                        Class<?> type = Class.forName(name.trim(), false, context);
+                        compiler.compile(type, parseLocale(locale.trim()));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2011 Peransin Nicolas.
+ * Use is subject to license terms.
+ */
+package org.mypsycho.beans;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.mypsycho.util.CachePolicy;
+import org.mypsycho.util.PolicyCache;
+import org.mypsycho.util.PolicyCacheMBean;
+
+
+/**
+ * Invoker resolving accessors once per bean class.
+ * <p>
+ * The default invoker searches the accessible version of each accessor, through
+ * the public interfaces and super classes, on every access. This invoker keeps
+ * the result by bean class and disables the access checks of resolved methods:
+ * the reflection layer then generates its own accessor after a few calls.
+ * </p>
+ * <p>
+ * Accessors are still called by <code>Method.invoke</code>, with an argument
+ * array and boxed primitives: Java 6 offers no method handles and generating
+ * classes would require a bytecode library.
+ * </p>
+ * <p>
+ * Bean classes are weakly referenced keys and the resolved accessors are softly
+ * referenced. As accessors reference their class, a class can only be unloaded
+ * once its accessors are cleared, under memory pressure.
+ * </p>
+ *
+ * @author Peransin Nicolas
+ */
+public class CachedInvoker extends ExtensionInvoker {
+
+    // Marker for accessors without accessible version
+    private static final Object NO_METHOD = new Object();
+
+    final PolicyCache<Class<?>, ConcurrentMap<Method, Object>> accessors = createCache();
+
+    @Override
+    Method getAccessibleMethod(Class<?> clazz, Method method) {
+        if (method == null) {
+            return null;
+        }
+
+        ConcurrentMap<Method, Object> methods = accessors.get(clazz);
+        if (methods == null) {
+            methods = new ConcurrentHashMap<Method, Object>();
+            ConcurrentMap<Method, Object> previous = accessors.putIfAbsent(clazz, methods);
+            if (previous != null) {
+                methods = previous;
+            }
+        }
+
+        Object resolved = methods.get(method);
+        if (resolved == null) {
+            Method accessible = super.getAccessibleMethod(clazz, method);
+            if (accessible != null) {
+                try {
+                    accessible.setAccessible(true);
+                } catch (RuntimeException e) {
+                    // security manager or module: checks are performed on each call
+                }
+            }
+            resolved = (accessible != null) ? accessible : NO_METHOD;
+            methods.put(method, resolved);
+        }
+        return (resolved != NO_METHOD) ? (Method) resolved : null;
+    }
+
+    static PolicyCache<Class<?>, ConcurrentMap<Method, Object>> createCache() {
+        CachePolicy policy = new CachePolicy(0, CachePolicy.Strength.SOFT);
+        policy.setWeakKeys(true);
+        return policy.createCache();
+    }
+
+    /**
+     * Returns the statistics of the accessor cache.
+     *
+     * @return the cache statistics
+     */
+    public PolicyCacheMBean getAccessorsCache() {
+        return accessors;
+    }
+}
@@ -86,7 +86,7 @@ public class DefaultInvoker implements Invoker {
      * @return The write method
      */
     Method getWriteMethod(Class<?> clazz, PropertyDescriptor descriptor) {
-        return (MethodUtils.getAccessibleMethod(clazz, descriptor.getWriteMethod()));
+        return getAccessibleMethod(clazz, descriptor.getWriteMethod());
     }
 
     /**
@@ -103,7 +103,55 @@ public class DefaultInvoker implements Invoker {
      * @return The read method
      */
     Method getReadMethod(Class<?> clazz, PropertyDescriptor descriptor) {
-        return (MethodUtils.getAccessibleMethod(clazz, descriptor.getReadMethod()));
+        return getAccessibleMethod(clazz, descriptor.getReadMethod());
+    }
+
+    /**
+     * Return an accessible method that can be invoked on instances of a class.
+     *
+     * @param clazz The class the method will be invoked on
+     * @param method The method, may be null
+     * @return The accessible method or null
+     */
+    Method getAccessibleMethod(Class<?> clazz, Method method) {
+        return MethodUtils.getAccessibleMethod(clazz, method);
+    }
+
+    /**
+     * Return the getter which can be called directly to read a simple property
+     * of a class, or <code>null</code> if the access must go through this invoker.
+     * <p>
+     * Used by compiled injections to resolve accessors once per class.
+     * </p>
+     *
+     * @param clazz The class of the bean
+     * @param prop Property descriptor
+     * @return The read method or null
+     */
+    Method getDirectReadMethod(Class<?> clazz, PropertyDescriptor prop) {
+        return getReadMethod(clazz, prop);
+    }
+
+    /**
+     * Return the setter which can be called directly to write a simple property
+     * of a class, or <code>null</code> if the access must go through this invoker.
+     *
+     * @param clazz The class of the bean
+     * @param prop Property descriptor
+     * @return The write method or null
+     */
+    Method getDirectWriteMethod(Class<?> clazz, PropertyDescriptor prop) {
+        return getWriteMethod(clazz, prop);
+    }
+
+    Object invokeGetter(Method readMethod, Object bean)
+            throws IllegalAccessException, InvocationTargetException {
+        return invokeMethod(readMethod, bean, EMPTY_OBJECT_ARRAY);
+    }
+
+    void invokeSetter(Method writeMethod, Object bean, Object value)
+            throws IllegalAccessException, InvocationTargetException {
+        invokeMethod(writeMethod, bean, new Object[] { value });
     }
 
     /*
@@ -142,7 +190,7 @@ public class DefaultInvoker implements Invoker {
         // Call the indexed getter method if there is one
         if (prop instanceof IndexedPropertyDescriptor) {
             Method readMethod = ((IndexedPropertyDescriptor) prop).getIndexedReadMethod();
-            readMethod = MethodUtils.getAccessibleMethod(bean.getClass(), readMethod);
+            readMethod = getAccessibleMethod(bean.getClass(), readMethod);
             if (readMethod != null) {
                 try {
                     return (invokeMethod(readMethod, bean, new Object[] { index }));
@@ -186,7 +234,7 @@ public class DefaultInvoker implements Invoker {
         // Call the indexed setter method if there is one
         if (prop instanceof IndexedPropertyDescriptor) {
             Method writeMethod = ((IndexedPropertyDescriptor) prop).getIndexedWriteMethod();
-            writeMethod = MethodUtils.getAccessibleMethod(bean.getClass(), writeMethod);
+            writeMethod = getAccessibleMethod(bean.getClass(), writeMethod);
             if (writeMethod != null) {
                 try {
                     invokeMethod(writeMethod, bean, new Object[] { index, value });
@@ -233,7 +281,7 @@ public class DefaultInvoker implements Invoker {
         if (prop instanceof MappedPropertyDescriptor) {
             // Call the keyed getter method if there is one
             Method readMethod = ((MappedPropertyDescriptor) prop).getMappedReadMethod();
-            readMethod = MethodUtils.getAccessibleMethod(bean.getClass(), readMethod);
+            readMethod = getAccessibleMethod(bean.getClass(), readMethod);
             required(bean, prop, readMethod, "mapped getter");
 
             return invokeMethod(readMethod, bean, new Object[] { key });
@@ -263,7 +311,7 @@ public class DefaultInvoker implements Invoker {
         if (prop instanceof MappedPropertyDescriptor) {
             // Call the keyed setter method if there is one
             Method mappedWriteMethod = ((MappedPropertyDescriptor) prop).getMappedWriteMethod();
-            mappedWriteMethod = MethodUtils.getAccessibleMethod(bean.getClass(), mappedWriteMethod);
+            mappedWriteMethod = getAccessibleMethod(bean.getClass(), mappedWriteMethod);
             required(bean, prop, mappedWriteMethod, "mapped setter");
 
             Object[] params = new Object[] { key, value };
@@ -273,7 +321,7 @@ public class DefaultInvoker implements Invoker {
 
         /* means that the result has to be retrieved from a map */
         Method readMethod = getReadMethod(bean.getClass(), prop);
-        required(bean, prop, null, "mapped getter");
+        required(bean, prop, readMethod, "mapped getter");
 
         Object invokeResult = invokeMethod(readMethod, bean, EMPTY_OBJECT_ARRAY);
         /* test and fetch from the map */
@@ -296,7 +344,7 @@ public class DefaultInvoker implements Invoker {
 
 
     /** This just catches and wraps IllegalArgumentException. */
-    private Object invokeMethod(Method method, Object bean, Object[] values)
+    Object invokeMethod(Method method, Object bean, Object[] values)
             throws IllegalAccessException, InvocationTargetException {
         if (bean == null) {
             throw new IllegalArgumentException("No bean specified "
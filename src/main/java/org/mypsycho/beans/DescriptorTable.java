@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2011 Peransin Nicolas.
+ * Use is subject to license terms.
+ */
+package org.mypsycho.beans;
+
+import java.beans.PropertyDescriptor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Property descriptors of a class, indexed by name.
+ * <p>
+ * Introspected descriptors are indexed at creation. Descriptors discovered later
+ * (mapped properties or missing properties) are added without copying the
+ * index, lookups are never locked.
+ * </p>
+ *
+ * @author Peransin Nicolas
+ */
+final class DescriptorTable {
+
+    private final ConcurrentMap<String, PropertyDescriptor> byName;
+
+    // Array exposed by getPropertyDescriptors, replaced when a descriptor is added
+    private volatile PropertyDescriptor[] descriptors;
+
+    DescriptorTable(PropertyDescriptor[] introspected) {
+        descriptors = introspected;
+        byName = new ConcurrentHashMap<String, PropertyDescriptor>(
+                Math.max(16, introspected.length * 2));
+        for (PropertyDescriptor descriptor : introspected) {
+            // first declaration prevails, as in a sequential search
+            byName.putIfAbsent(descriptor.getName(), descriptor);
+        }
+    }
+
+    PropertyDescriptor[] getDescriptors() {
+        return descriptors;
+    }
+
+    PropertyDescriptor get(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Add a descriptor discovered after introspection.
+     *
+     * @param descriptor the descriptor to add
+     * @param listed true if the descriptor is an actual property of the class
+     * @return the descriptor registered with this name
+     */
+    PropertyDescriptor add(PropertyDescriptor descriptor, boolean listed) {
+        PropertyDescriptor previous = byName.putIfAbsent(descriptor.getName(), descriptor);
+        if (previous != null) {
+            return previous;
+        }
+        if (listed) {
+            synchronized (this) {
+                PropertyDescriptor[] current = descriptors;
+                PropertyDescriptor[] added = new PropertyDescriptor[current.length + 1];
+                System.arraycopy(current, 0, added, 0, current.length);
+                added[current.length] = descriptor;
+                descriptors = added;
+            }
+        }
+        return descriptor;
+    }
+}
@@ -6,6 +6,7 @@ package org.mypsycho.beans;
 
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -52,6 +53,16 @@ public class ExtensionInvoker extends DefaultInvoker {
         return super.getPropertyType(prop, collection);
     }
 
+    @Override
+    Method getDirectReadMethod(Class<?> clazz, PropertyDescriptor prop) {
+        return (prop instanceof DescriptorExtension) ? null : super.getDirectReadMethod(clazz, prop);
+    }
+
+    @Override
+    Method getDirectWriteMethod(Class<?> clazz, PropertyDescriptor prop) {
+        return (prop instanceof DescriptorExtension) ? null : super.getDirectWriteMethod(clazz, prop);
+    }
+
     @Override
     public Object get(Object bean, PropertyDescriptor prop)
             throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
@@ -40,6 +40,9 @@ public class InjectDescriptor extends Injection {
 
     Map<String, String> values;
 
+    // Properties as provided, the loader tracks the bundles they read
+    Map<String, String> source;
+
     /**
      * Constructor
      *
@@ -92,7 +95,8 @@ public class InjectDescriptor extends Injection {
     @Override
     protected String compile() {
 
-        values = Collections.unmodifiableMap(context.getValue(type, locale));
+        source = context.getValue(type, locale);
+        values = Collections.unmodifiableMap(source);
 
         // Buildin injection tree
         for (String key : values.keySet()) {
@@ -109,7 +113,7 @@ public class InjectDescriptor extends Injection {
         for (Iterator<Injection> iChild = children.iterator(); iChild.hasNext();) {
             Injection child = iChild.next();
             if (getInjector().getDeprecated().equals(child.definition)) {
-                iChild.remove();
+                removeChild(iChild, child);
                 continue;
             }
             
@@ -127,15 +131,15 @@ public class InjectDescriptor extends Injection {
 
 
             if (rejection != null) {
-                iChild.remove();
+                removeChild(iChild, child);
                 getInjector().notify(child.getCanonicalName(), rejection, cause);
             } else if ((child.definition == null) && (child.children == null)) {
-                iChild.remove(); // all deprecated
+                removeChild(iChild, child); // all deprecated
             }
 
         }
         if (children.isEmpty()) {
-            children = null;
+            clearChildren();
         } else {
             children.trimToSize();
         }
@@ -151,6 +155,22 @@ public class InjectDescriptor extends Injection {
         return descriptors;
     }
 
+    /**
+     * Compile and convert the definitions of the bean properties which do not
+     * depend on the bean.
+     *
+     * @param bean bean to prepare
+     */
+    public void prepare(Object bean) {
+        if (!hasChildren()) {
+            return;
+        }
+        InjectionContext context = new InjectionContext(getInjector(), bean);
+        for (Injection child : children) {
+            child.prepare(bean, context);
+        }
+    }
+
     public void inject(Object bean, String path, Object element) {
 
         Class<?> collectedType = getInvoker().getCollectedType(element.getClass());
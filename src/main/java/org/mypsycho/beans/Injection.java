@@ -11,6 +11,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -18,6 +20,8 @@ import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.apache.commons.beanutils.expression.Resolver;
+import org.mypsycho.beans.converter.AbstractTypeConverter;
+import org.mypsycho.beans.converter.TypeConverter;
 
 
 /**
@@ -44,6 +48,8 @@ public class Injection {
     // ArrayList is explicitly used to save memory (trim)
     ArrayList<Injection> children = new ArrayList<Injection>();
     Nature childrenNature = null;
+    // Children by nature and id, the list keeps the injection order
+    Map<Nature, Map<Object, Injection>> childrenIndex = null;
 
 
 
@@ -57,6 +63,10 @@ public class Injection {
     int size = -1;
     Reference<?> cache = null;
 
+    // Compiled forms for the last classes met (usually, always the same)
+    volatile InjectionPlan plan = null;
+    volatile InjectionPlan.Children childrenPlan = null;
+
     public Injection(Injection descriptor, Nature kind, Object key) {
         parent = descriptor;
         id = key;
@@ -102,7 +112,7 @@ public class Injection {
                 return null;
             }
             child = createInjection(this, childNature, childKey);
-            children.add(child);
+            addChild(child);
         }
 
         return child.getPath(tail, init);
@@ -158,16 +168,44 @@ public class Injection {
 
 
     protected Injection getChild(Nature kind, Object id) {
-        if (children == null) {
+        if (childrenIndex == null) {
             return null;
         }
-        for (Injection child : children) {
-            if ((kind == child.nature) && id.equals(child.id)) {
-                return child;
-            }
+        Map<Object, Injection> ids = childrenIndex.get(kind);
+        return (ids != null) ? ids.get(id) : null;
+    }
+
+    void addChild(Injection child) {
+        if (children == null) {
+            children = new ArrayList<Injection>();
         }
+        children.add(child);
 
-        return null;
+        if (childrenIndex == null) {
+            childrenIndex = new EnumMap<Nature, Map<Object, Injection>>(Nature.class);
+        }
+        Map<Object, Injection> ids = childrenIndex.get(child.nature);
+        if (ids == null) {
+            ids = new HashMap<Object, Injection>();
+            childrenIndex.put(child.nature, ids);
+        }
+        ids.put(child.id, child);
+    }
+
+    /**
+     * Remove the current child of the iteration on children.
+     *
+     * @param iChild iterator on children
+     * @param child current child
+     */
+    void removeChild(Iterator<Injection> iChild, Injection child) {
+        iChild.remove();
+        childrenIndex.get(child.nature).remove(child.id);
+    }
+
+    void clearChildren() {
+        children = null;
+        childrenIndex = null;
     }
 
     protected Injection createInjection(Injection container, Injection.Nature kind, Object id) {
@@ -208,7 +246,7 @@ public class Injection {
         for (Iterator<Injection> iChild = children.iterator(); iChild.hasNext();) {
             Injection child = iChild.next();
             if (getInjector().getDeprecated().equals(child.definition)) {
-                iChild.remove();
+                removeChild(iChild, child);
                 continue;
             }
 
@@ -229,7 +267,7 @@ public class Injection {
         }
 
         if (children.isEmpty()) {
-            children = null;
+            clearChildren();
 
         } else {
             children.trimToSize();
@@ -306,21 +344,14 @@ public class Injection {
             return;
         }
         for (Injection templateChild : template.children) {
-            String childPath = null;
-            switch (templateChild.nature) {
-                case SIMPLE:
-                    childPath = (String) templateChild.getId();
-                    break;
-                case INDEXED:
-                    childPath = "[" + templateChild.getId() + "]";
-                    break;
-                case MAPPED:
-                    childPath = "(" + templateChild.getId() + ")";
-                    break;
-                default:
-                    break;
+            // Same node as the child path, without parsing it
+            Injection child = injection.getChild(templateChild.nature, templateChild.id);
+            if (child == null) {
+                child = injection.createInjection(injection, templateChild.nature,
+                        templateChild.id);
+                injection.addChild(child);
             }
-            mergeTemplate(injection.getPath(childPath, true), templateChild, call);
+            mergeTemplate(child, templateChild, call);
         }
     }
 
@@ -340,6 +371,34 @@ public class Injection {
      * @param context injection context
      */
     public void inject(Class<?> type, Object bean, InjectionContext context) {
+        inject(type, bean, null, context);
+    }
+
+    /**
+     * Inject the content of this branch with a definition already converted.
+     *
+     * @param type the type of collection if applicable
+     * @param bean the object of inject
+     * @param converted converted definition of a collection element, null if not converted
+     * @param context injection context
+     */
+    void inject(Class<?> type, Object bean, Object converted, InjectionContext context) {
+        InjectionProfiler profiler = context.profiler;
+        if (profiler == null) {
+            injectProperty(type, bean, converted, context);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            injectProperty(type, bean, converted, context);
+        } finally {
+            profiler.propertyInjected(this, System.nanoTime() - start);
+        }
+    }
+
+    private void injectProperty(Class<?> type, Object bean, Object converted,
+            InjectionContext context) {
         try {
 
             switch (nature) {
@@ -349,7 +408,7 @@ public class Injection {
 
                 case MAPPED:
                 case INDEXED:
-                    injectCollection(type, bean, context);
+                    injectCollection(type, bean, converted, context);
                     break;
 
                 default:
@@ -365,6 +424,9 @@ public class Injection {
             }
             
             if (ATTRIBUT_PATTERN.matcher(""+id).matches()) {
+                if (context.profiler != null) {
+                    context.profiler.failed(this, e);
+                }
                 getInjector().notify(getCanonicalName(), e.getMessage(), e);
             }
         } catch (Exception e) {
@@ -373,6 +435,9 @@ public class Injection {
                 cause = ((InvocationTargetException) cause).getTargetException();
             }
 
+            if (context.profiler != null) {
+                context.profiler.failed(this, cause);
+            }
             if (cause instanceof Error) {
                 throw (Error) cause;
             }
@@ -380,9 +445,46 @@ public class Injection {
         }
     }
 
-    private void injectCollection(Class<?> type, Object bean, InjectionContext context) {
-        Object value = null;
-        if (definition != null) {
+    /**
+     * Convert the definition when it does not depend on the injected bean.
+     * <p>
+     * This method may be called out of the thread of injection: no accessor of
+     * the bean is called. Converted values are kept by the plan or by the converter
+     * so the following injection only call the setter. Failures are ignored, they
+     * will be notified by the injection.
+     * </p>
+     *
+     * @param bean bean to inject
+     * @param context preparation context
+     */
+    void prepare(Object bean, InjectionContext context) {
+        if ((nature != Nature.SIMPLE) || (definition == null) || hasChildren()) {
+            return;
+        }
+        try {
+            InjectionPlan compiled = getPlan(bean);
+            if (!compiled.writeable || (compiled.constant != null)) {
+                return;
+            }
+            Class<?> targetType = compiled.propertyType;
+            boolean immutable = InjectionPlan.isImmutable(targetType);
+            if (!immutable && !AbstractTypeConverter.isShared(getInjector().getConverter(),
+                    targetType, definition)) {
+                return;
+            }
+            Object value = convert(targetType, bean, context);
+            if (immutable && (value != null) && InjectionPlan.isImmutable(value.getClass())) {
+                compiled.constant = value;
+            }
+        } catch (Exception ignore) {
+            // notified on injection
+        }
+    }
+
+    private void injectCollection(Class<?> type, Object bean, Object converted,
+            InjectionContext context) {
+        Object value = converted;
+        if ((value == null) && (definition != null)) {
             value = convert(type, bean, context);
         }
 
@@ -463,26 +565,36 @@ public class Injection {
     private void injectSimple(Object bean, InjectionContext context)
             throws IllegalAccessException, InvocationTargetException, NoSuchMethodException,
             IllegalArgumentException {
-        PropertyDescriptor descr = getInjector().getPropertyDescriptor(bean, (String) id);
+        InjectionPlan compiled = getPlan(bean);
         Object value = null;
         // setter is performed once the bean is complete
         Class<?> targetType = null;
         boolean toSet = false;
         if (definition != null) {
-            if (getInvoker().isWriteable(bean, descr, false)) {
-                targetType = getInvoker().getPropertyType(descr, false);
-                value = convert(targetType, bean, context);
+            if (compiled.writeable) {
+                targetType = compiled.propertyType;
+                value = compiled.constant;
+                if ((value != null) && (context.profiler != null)) {
+                    context.profiler.converted(this, targetType, true, 0L);
+                }
+                if (value == null) {
+                    value = convert(targetType, bean, context);
+                    if ((value != null) && InjectionPlan.isImmutable(targetType)
+                            && InjectionPlan.isImmutable(value.getClass())) {
+                        compiled.constant = value;
+                    }
+                }
                 toSet = true;
             } else {
                 getInjector().notify("Undefined", getCanonicalName(), null);
                 return;
             }
 
-        } else if (getInvoker().isReadable(bean, descr, false)) { // Property is accessible
-            value = getInvoker().get(bean, descr);
+        } else if (compiled.readable) { // Property is accessible
+            value = compiled.get(getInvoker(), bean);
             if (value == null) {
-                if (getInvoker().isWriteable(bean, descr, false)) {
-                    targetType = getInvoker().getPropertyType(descr, false);
+                if (compiled.writeable) {
+                    targetType = compiled.propertyType;
 
                     String dimension = null;
                     if (isCollection(Nature.INDEXED)) {
@@ -498,8 +610,8 @@ public class Injection {
                     return;
                 }
             }
-        } else if (getInvoker().isWriteable(bean, descr, false)) {
-            targetType = getInvoker().getPropertyType(descr, false);
+        } else if (compiled.writeable) {
+            targetType = compiled.propertyType;
 
             String dimension = null;
             if (isCollection(Nature.INDEXED)) {
@@ -517,7 +629,7 @@ public class Injection {
                 injectChildren(getInvoker().getCollectedType(value.getClass()), value, context);
             }
             if (toSet) { // setter is performed once the bean is complete
-                getInvoker().set(bean, descr, value != NULL_VALUE ? value : null);
+                compiled.set(getInvoker(), bean, value != NULL_VALUE ? value : null);
             }            
             return;
         } else if (toSet) {
@@ -531,8 +643,9 @@ public class Injection {
         
         
         // Property is wrapped, value is not defined
-        if (getInvoker().isCollection(descr)) {
-            targetType = getInvoker().getPropertyType(descr, true);
+        PropertyDescriptor descr = compiled.descriptor;
+        if (compiled.collection) {
+            targetType = compiled.collectedType;
         }
 
         Boolean childWritable = null;
@@ -551,7 +664,7 @@ public class Injection {
                     if (targetType == null) {
                         getInjector().notify("Untyped", getCanonicalName(), null);
                         childWritable = false;
-                    } else if (!getInvoker().isWriteable(bean, descr, true)) {
+                    } else if (!compiled.collectionWriteable) {
                         getInjector().notify("Unwrittable", getCanonicalName(), null);
                         childWritable = false;
                     }
@@ -608,33 +721,13 @@ public class Injection {
             return;
         }
 
-        List<Injection> injections = children;
-        
-        // Fix injection order
-        Inject inject = value.getClass().getAnnotation(Inject.class);
-        if ((inject != null) && inject.order().length > 0) {
-            injections = new ArrayList<Injection>(children.size());
-            for (String name : inject.order()) {
-                for (Injection child : children) {
-                    if (name.equals(child.id)) {
-                        injections.add(child);
-                        break; // next order
-                    }
-                }
-            }
-
-            for (Injection child : children) {
-                if (!injections.contains(child)) {
-                    injections.add(child);
-                }
-            }
-        }
-        
+        InjectionPlan.Children injections = getChildrenPlan(value);
         context.update(type, this, value);
 
-
-        for (Injection child : injections) {
-            child.inject(type, value, context);
+        Object[] converteds = convertIndexed(type, value, injections.injections, context);
+        for (int i = 0; i < injections.injections.length; i++) {
+            Object converted = (converteds != null) ? converteds[i] : null;
+            injections.injections[i].inject(type, value, converted, context);
         }
         if (value instanceof Injectable) {
             // Nothing inject when no child
@@ -643,6 +736,105 @@ public class Injection {
         }
     }
 
+    /**
+     * Convert the definitions of indexed elements in a single call.
+     * <p>
+     * Only elements independent of the context are converted: immutable or
+     * shared values.
+     * </p>
+     *
+     * @param type type of elements
+     * @param collection injected collection
+     * @param injections elements to inject
+     * @param context injection context
+     * @return converted values by element, null if elements are converted one by one
+     */
+    Object[] convertIndexed(Class<?> type, Object collection, Injection[] injections,
+            InjectionContext context) {
+        if ((childrenNature != Nature.INDEXED) || (type == null) || (injections.length < 2)) {
+            return null;
+        }
+
+        TypeConverter converter = getInjector().getConverter();
+        String nullTag = getInjector().getNullTag();
+        boolean immutable = InjectionPlan.isImmutable(type);
+        int[] positions = new int[injections.length];
+        String[] definitions = new String[injections.length];
+        int count = 0;
+        for (int i = 0; i < injections.length; i++) {
+            Injection child = injections[i];
+            String childDefinition = child.definition;
+            if ((childDefinition != null) && !child.hasChildren()
+                    && !nullTag.equals(childDefinition)
+                    && (immutable || isShared(converter, type, childDefinition))) {
+                positions[count] = i;
+                definitions[count] = childDefinition;
+                count++;
+            }
+        }
+        if (count < 2) {
+            return null;
+        }
+        if (count < definitions.length) {
+            String[] trimmed = new String[count];
+            System.arraycopy(definitions, 0, trimmed, 0, count);
+            definitions = trimmed;
+        }
+
+        long start = (context.profiler != null) ? System.nanoTime() : 0L;
+        Object[] values;
+        try {
+            values = AbstractTypeConverter.convertAll(converter, type, definitions, context);
+        } catch (IllegalArgumentException e) {
+            return null; // Elements are converted and notified one by one
+        }
+
+        Object[] converteds = new Object[injections.length];
+        for (int i = 0; i < count; i++) {
+            converteds[positions[i]] = values[i];
+        }
+        if (context.profiler != null) {
+            long nanos = (System.nanoTime() - start) / count;
+            for (int i = 0; i < count; i++) {
+                context.profiler.converted(injections[positions[i]], type, false, nanos);
+            }
+        }
+        return converteds;
+    }
+
+    static boolean isShared(TypeConverter converter, Class<?> type, String definition) {
+        try {
+            return AbstractTypeConverter.isShared(converter, type, definition);
+        } catch (RuntimeException e) {
+            return false; // converted and notified one by one
+        }
+    }
+
+    /**
+     * Returns the compiled form of this injection for the class of the bean.
+     *
+     * @param bean the injected bean
+     * @return the plan
+     * @throws NoSuchMethodException if the property does not exist
+     */
+    InjectionPlan getPlan(Object bean) throws NoSuchMethodException {
+        InjectionPlan current = plan;
+        if ((current == null) || (current.type != bean.getClass())) {
+            current = new InjectionPlan(this, bean);
+            plan = current;
+        }
+        return current;
+    }
+
+    InjectionPlan.Children getChildrenPlan(Object value) {
+        InjectionPlan.Children current = childrenPlan;
+        if ((current == null) || (current.type != value.getClass())) {
+            current = new InjectionPlan.Children(value.getClass(), children);
+            childrenPlan = current;
+        }
+        return current;
+    }
+
     protected Object convert(Class<?> expected, Object parent, InjectionContext context)
             throws IllegalArgumentException {
         return convert(expected, definition, parent, context);
@@ -650,6 +842,22 @@ public class Injection {
             
     protected Object convert(Class<?> expected, String content, Object parent, InjectionContext context)
             throws IllegalArgumentException {
+        InjectionProfiler profiler = context.profiler;
+        if (profiler == null) {
+            return convertDefinition(expected, content, parent, context);
+        }
+
+        long start = System.nanoTime();
+        boolean cached = (cache != null) && (cache.get() != null);
+        try {
+            return convertDefinition(expected, content, parent, context);
+        } finally {
+            profiler.converted(this, expected, cached, System.nanoTime() - start);
+        }
+    }
+
+    private Object convertDefinition(Class<?> expected, String content, Object parent,
+            InjectionContext context) throws IllegalArgumentException {
         Object value = (cache != null) ? cache.get() : null;
         if (value != null) {
             return value;
@@ -22,6 +22,9 @@ public final class InjectionContext implements Cloneable {
 
     final Object root;
 
+    // Null when injection is not profiled
+    final InjectionProfiler profiler;
+
     Class<?> type;
 
     Object parent;
@@ -35,6 +38,7 @@ public final class InjectionContext implements Cloneable {
     public InjectionContext(Injector injector, Object injected) {
         this.injector = injector;
         root = injected;
+        profiler = injector.getProfiler();
     }
 
     public Injection getInjection() {
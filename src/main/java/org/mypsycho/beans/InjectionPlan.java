@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2011 Peransin Nicolas.
+ * Use is subject to license terms.
+ */
+package org.mypsycho.beans;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Resolved form of an injection for a bean class.
+ * <p>
+ * An injection node is compiled against the class of the first bean it is applied on.
+ * Property descriptor, accessors and immutable converted values are resolved once,
+ * so injecting the following instances of the same class only calls the setters.
+ * </p>
+ * <p>
+ * Plans are immutable except the converted constant which is benignly racy: only
+ * immutable values are stored.
+ * </p>
+ *
+ * @author Peransin Nicolas
+ */
+final class InjectionPlan {
+
+    /** Types whose converted values can be shared by all beans of a class. */
+    static final Set<Class<?>> IMMUTABLES = new HashSet<Class<?>>(Arrays.<Class<?>> asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class,
+            Integer.class, Long.class, Float.class, Double.class,
+            Boolean.TYPE, Character.TYPE, Byte.TYPE, Short.TYPE,
+            Integer.TYPE, Long.TYPE, Float.TYPE, Double.TYPE));
+
+    static boolean isImmutable(Class<?> type) {
+        return (type != null) && (type.isEnum() || IMMUTABLES.contains(type));
+    }
+
+    final Class<?> type;
+
+    final PropertyDescriptor descriptor;
+
+    final boolean readable;
+
+    final boolean writeable;
+
+    final Class<?> propertyType;
+
+    final Method getter;
+
+    final Method setter;
+
+    // Only used when the property is wrapped (collection) and not defined
+    final boolean collection;
+
+    final Class<?> collectedType;
+
+    final boolean collectionWriteable;
+
+    /** Definition converted once for all beans, null when not applicable */
+    Object constant = null;
+
+    /**
+     * Compile a simple injection for a bean.
+     *
+     * @param node injection to compile
+     * @param bean a bean of the compiled class
+     * @throws NoSuchMethodException if the property does not exist
+     */
+    InjectionPlan(Injection node, Object bean) throws NoSuchMethodException {
+        type = bean.getClass();
+        Invoker invoker = node.getInvoker();
+        descriptor = node.getInjector().getPropertyDescriptor(type, (String) node.id);
+
+        readable = invoker.isReadable(bean, descriptor, false);
+        writeable = invoker.isWriteable(bean, descriptor, false);
+        propertyType = writeable ? invoker.getPropertyType(descriptor, false) : null;
+
+        Method read = null;
+        Method write = null;
+        if (invoker instanceof DefaultInvoker) {
+            DefaultInvoker direct = (DefaultInvoker) invoker;
+            read = readable ? direct.getDirectReadMethod(type, descriptor) : null;
+            write = writeable ? direct.getDirectWriteMethod(type, descriptor) : null;
+        }
+        getter = read;
+        setter = write;
+
+        collection = invoker.isCollection(descriptor);
+        collectedType = collection ? invoker.getPropertyType(descriptor, true) : null;
+        collectionWriteable = invoker.isWriteable(bean, descriptor, true);
+    }
+
+    Object get(Invoker invoker, Object bean)
+            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        return (getter != null) ? ((DefaultInvoker) invoker).invokeGetter(getter, bean)
+                : invoker.get(bean, descriptor);
+    }
+
+    void set(Invoker invoker, Object bean, Object value)
+            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        if (setter != null) {
+            ((DefaultInvoker) invoker).invokeSetter(setter, bean, value);
+        } else {
+            invoker.set(bean, descriptor, value);
+        }
+    }
+
+    /**
+     * Order of children injection for a value class.
+     * <p>
+     * Children are sorted at compilation, the {@link Inject#order()} of the value
+     * class is applied once.
+     * </p>
+     */
+    static final class Children {
+
+        final Class<?> type;
+
+        final Injection[] injections;
+
+        Children(Class<?> valueType, List<Injection> children) {
+            type = valueType;
+
+            Inject inject = valueType.getAnnotation(Inject.class);
+            if ((inject == null) || (inject.order().length == 0)) {
+                injections = children.toArray(new Injection[children.size()]);
+                return;
+            }
+
+            List<Injection> ordered = new ArrayList<Injection>(children.size());
+            for (String name : inject.order()) {
+                for (Injection child : children) {
+                    if (name.equals(child.id)) {
+                        ordered.add(child);
+                        break; // next order
+                    }
+                }
+            }
+
+            for (Injection child : children) {
+                if (!ordered.contains(child)) {
+                    ordered.add(child);
+                }
+            }
+            injections = ordered.toArray(new Injection[ordered.size()]);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2011 Peransin Nicolas.
+ * Use is subject to license terms.
+ */
+package org.mypsycho.beans;
+
+import java.util.Locale;
+
+
+/**
+ * Listener of injection timings.
+ * <p>
+ * A profiler is registered with {@link Injector#setProfiler(InjectionProfiler)}.
+ * Without profiler, injection does not measure anything.
+ * </p>
+ * <p>
+ * Implementations must be thread safe: descriptors may be compiled in background.
+ * Durations are in nanoseconds.
+ * </p>
+ *
+ * @author Peransin Nicolas
+ * @see InjectionReport
+ */
+public interface InjectionProfiler {
+
+    /**
+     * Notify the compilation of an injection descriptor.
+     *
+     * @param type compiled class
+     * @param locale locale of the descriptor
+     * @param nanos duration of bundle loading and compilation
+     */
+    void compiled(Class<?> type, Locale locale, long nanos);
+
+    /**
+     * Notify the injection of a bean.
+     *
+     * @param type class of the bean
+     * @param nanos duration of the whole injection
+     */
+    void injected(Class<?> type, long nanos);
+
+    /**
+     * Notify the injection of a property.
+     *
+     * @param injection injected property
+     * @param nanos duration, including the injection of nested properties
+     */
+    void propertyInjected(Injection injection, long nanos);
+
+    /**
+     * Notify the conversion of a definition.
+     *
+     * @param injection converted property
+     * @param expected expected type
+     * @param cached true if a previous conversion was reused
+     * @param nanos duration of the conversion
+     */
+    void converted(Injection injection, Class<?> expected, boolean cached, long nanos);
+
+    /**
+     * Notify the failure of a property injection.
+     *
+     * @param injection failing property
+     * @param cause cause of the failure
+     */
+    void failed(Injection injection, Throwable cause);
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2011 Peransin Nicolas.
+ * Use is subject to license terms.
+ */
+package org.mypsycho.beans;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Profiler accumulating timings by class and by property.
+ * <p>
+ * {@link #getReport(int)} lists the classes and the properties sorted by total
+ * time, so the slowest bundles and properties come first. Property times include
+ * their nested properties.
+ * </p>
+ *
+ * @author Peransin Nicolas
+ */
+public class InjectionReport implements InjectionProfiler {
+
+    /**
+     * Counters of an entry of the report.
+     */
+    public static class Entry {
+
+        final String name;
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong nanos = new AtomicLong();
+        final AtomicLong compileNanos = new AtomicLong();
+        final AtomicLong conversions = new AtomicLong();
+        final AtomicLong cachedConversions = new AtomicLong();
+        final AtomicLong conversionNanos = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** @return count of injections */
+        public long getCount() {
+            return count.get();
+        }
+
+        /** @return total injection time in nanoseconds */
+        public long getNanos() {
+            return nanos.get();
+        }
+
+        /** @return descriptor compilation time in nanoseconds */
+        public long getCompileNanos() {
+            return compileNanos.get();
+        }
+
+        /** @return count of conversions, including cached ones */
+        public long getConversions() {
+            return conversions.get();
+        }
+
+        /** @return count of conversions reusing a previous result */
+        public long getCachedConversions() {
+            return cachedConversions.get();
+        }
+
+        /** @return total conversion time in nanoseconds */
+        public long getConversionNanos() {
+            return conversionNanos.get();
+        }
+
+        /** @return count of failures */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        long getTotal() {
+            return nanos.get() + compileNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8.3f ms %6d x %6.3f ms compile %5d conv (%d cached) %3d failed  %s",
+                    getTotal() / 1e6, count.get(), compileNanos.get() / 1e6,
+                    conversions.get(), cachedConversions.get(), failures.get(), name);
+        }
+    }
+
+    private static final Comparator<Entry> BY_TOTAL = new Comparator<Entry>() {
+
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            long t1 = o1.getTotal();
+            long t2 = o2.getTotal();
+            return (t1 < t2) ? 1 : ((t1 == t2) ? o1.name.compareTo(o2.name) : -1);
+        }
+    };
+
+    final ConcurrentMap<String, Entry> classes = new ConcurrentHashMap<String, Entry>();
+    final ConcurrentMap<String, Entry> properties = new ConcurrentHashMap<String, Entry>();
+
+    static Entry getEntry(ConcurrentMap<String, Entry> entries, String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = new Entry(name);
+            Entry previous = entries.putIfAbsent(name, entry);
+            if (previous != null) {
+                entry = previous;
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public void compiled(Class<?> type, Locale locale, long nanos) {
+        getEntry(classes, type.getName()).compileNanos.addAndGet(nanos);
+    }
+
+    @Override
+    public void injected(Class<?> type, long nanos) {
+        Entry entry = getEntry(classes, type.getName());
+        entry.count.incrementAndGet();
+        entry.nanos.addAndGet(nanos);
+    }
+
+    @Override
+    public void propertyInjected(Injection injection, long nanos) {
+        Entry entry = getEntry(properties, injection.getCanonicalName());
+        entry.count.incrementAndGet();
+        entry.nanos.addAndGet(nanos);
+    }
+
+    @Override
+    public void converted(Injection injection, Class<?> expected, boolean cached, long nanos) {
+        Entry entry = getEntry(properties, injection.getCanonicalName());
+        entry.conversions.incrementAndGet();
+        if (cached) {
+            entry.cachedConversions.incrementAndGet();
+        }
+        entry.conversionNanos.addAndGet(nanos);
+    }
+
+    @Override
+    public void failed(Injection injection, Throwable cause) {
+        getEntry(properties, injection.getCanonicalName()).failures.incrementAndGet();
+    }
+
+    /**
+     * Returns the classes sorted by decreasing total time.
+     *
+     * @return the class entries
+     */
+    public List<Entry> getClasses() {
+        return sort(classes);
+    }
+
+    /**
+     * Returns the properties sorted by decreasing total time.
+     *
+     * @return the property entries
+     */
+    public List<Entry> getProperties() {
+        return sort(properties);
+    }
+
+    static List<Entry> sort(Map<String, Entry> entries) {
+        List<Entry> sorted = new ArrayList<Entry>(entries.values());
+        Collections.sort(sorted, BY_TOTAL);
+        return sorted;
+    }
+
+    /**
+     * Returns a text report of the slowest classes and properties.
+     *
+     * @param limit maximum count of lines per section, 0 or less for all
+     * @return the report
+     */
+    public String getReport(int limit) {
+        StringBuilder report = new StringBuilder();
+        appendSection(report, "Classes", getClasses(), limit);
+        appendSection(report, "Properties", getProperties(), limit);
+        return report.toString();
+    }
+
+    static void appendSection(StringBuilder report, String title, List<Entry> entries, int limit) {
+        report.append(title).append(" (").append(entries.size()).append(")\n");
+        int size = (limit > 0) ? Math.min(limit, entries.size()) : entries.size();
+        for (int i = 0; i < size; i++) {
+            report.append("  ").append(entries.get(i)).append('\n');
+        }
+    }
+
+    /**
+     * Forget all recorded timings.
+     */
+    public void reset() {
+        classes.clear();
+        properties.clear();
+    }
+
+    @Override
+    public String toString() {
+        return getReport(20);
+    }
+}
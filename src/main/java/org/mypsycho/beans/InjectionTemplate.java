@@ -6,9 +6,11 @@ package org.mypsycho.beans;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.mypsycho.util.CachePolicy;
+import org.mypsycho.util.PolicyCache;
+
 
 /**
  * Class for ...
@@ -37,6 +39,7 @@ public class InjectionTemplate {
     protected static final String ARG = "\\{" + LITERAL + "=" + ANY + "\\}";
     protected static final String VALUE = "=" + ANY;
             
+    // Grammar of templates, parse uses an equivalent scanner
     protected static final String REG = START + PATH + N(ARG) + N(VALUE, "?") + END;
     protected Pattern pattern = Pattern.compile(REG);
     protected Pattern argsPattern = Pattern.compile("\\}\\{");
@@ -63,16 +66,25 @@ public class InjectionTemplate {
     }
 
     
+    static final String LITERAL_CHARS = "-_";
+    static final String ROOT_CHARS = "-@~!\u00a7_";
+    static final Object NO_CALL = new Object();
+
     String name;
     
     String value;
     
     Map<String, String> options;
-    
+
+    // Parsed calls by definition, only for the parser instance
+    final PolicyCache<String, Object> calls;
+
     public InjectionTemplate() {
+        calls = new CachePolicy(0, CachePolicy.Strength.SOFT).<String, Object> createCache();
     }
     
     protected InjectionTemplate(String n, String v, String[][] args) {
+        calls = null;
         name = n;
         value = v;
         if ((args != null) && (args.length > 0)) {
@@ -153,25 +165,159 @@ public class InjectionTemplate {
                 || !s.startsWith(PLAIN_START) || !s.endsWith(PLAIN_END)) {
             return null;
         }
-        Matcher matcher = pattern.matcher(s.trim());
-        boolean found = matcher.find();
+        if (calls == null) {
+            return scan(s);
+        }
+
+        Object call = calls.get(s);
+        if (call == null) {
+            call = scan(s);
+            if (call == null) {
+                call = NO_CALL;
+            }
+            Object previous = calls.putIfAbsent(s, call);
+            if (previous != null) {
+                call = previous;
+            }
+        }
+        return (call != NO_CALL) ? (InjectionTemplate) call : null;
+    }
+
+    /**
+     * Parse a call as matched by {@link #REG}.
+     * <p>
+     * Like the greedy expression, arguments extend to the last '}' followed by the
+     * value or by the end of call.
+     * </p>
+     *
+     * @param s definition starting with '%{' and ending with '}'
+     * @return the call or null
+     */
+    protected InjectionTemplate scan(String s) {
+        int end = s.length() - 1; // closing '}'
+        for (int i = 0; i < s.length(); i++) {
+            if (isLineTerminator(s.charAt(i))) { // not matched by '.'
+                return null;
+            }
+        }
 
-        if (!found) {
+        int pathEnd = scanPath(s, PLAIN_START.length(), end);
+        if (pathEnd < 0) {
             return null;
         }
 
-        String value = matcher.group(16);
-        if (value != null) { // ignore '='
-            value = value.substring(1);
+        String args = null;
+        String value = null;
+        char next = s.charAt(pathEnd);
+        if (next == '{') {
+            int argStart = scanLiteral(s, pathEnd + 1, end);
+            if ((argStart < 0) || (s.charAt(argStart) != '=')) {
+                return null;
+            }
+            int argsEnd = -1;
+            if ((end - 1 > argStart) && (s.charAt(end - 1) == '}')) {
+                argsEnd = end - 1;
+            } else {
+                for (int i = end - 2; i > argStart; i--) {
+                    if ((s.charAt(i) == '}') && (s.charAt(i + 1) == '=')) {
+                        argsEnd = i;
+                        break;
+                    }
+                }
+                if (argsEnd < 0) {
+                    return null;
+                }
+                value = s.substring(argsEnd + 2, end);
+            }
+            args = s.substring(pathEnd, argsEnd + 1);
+
+        } else if (next == '=') {
+            value = s.substring(pathEnd + 1, end);
+        } else if (pathEnd != end) {
+            return null;
         }
-        
+
         try {
-            String[][] args = args(matcher.group(13));
-            return createTemplate(fullName(matcher.group(1), args), value, args);
+            String[][] parsed = args(args);
+            return createTemplate(fullName(s.substring(PLAIN_START.length(), pathEnd), parsed),
+                    value, parsed);
         } catch (IllegalArgumentException e) {
             return null;
         }
     }
+
+    static boolean isLineTerminator(char c) {
+        return (c == '\n') || (c == '\r') || (c == '\u0085') || (c == '\u2028')
+                || (c == '\u2029');
+    }
+
+    static boolean isLiteral(char c, String extras) {
+        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'))
+                || ((c >= '0') && (c <= '9')) || (extras.indexOf(c) >= 0);
+    }
+
+    /**
+     * Returns the index following a not empty literal.
+     */
+    static int scanLiteral(String s, int start, int end) {
+        int i = start;
+        while ((i < end) && isLiteral(s.charAt(i), LITERAL_CHARS)) {
+            i++;
+        }
+        return (i > start) ? i : -1;
+    }
+
+    /**
+     * Returns the index following a mapped key or an index element, -1 if none.
+     */
+    static int scanElement(String s, int start, int end) {
+        if (start >= end) {
+            return -1;
+        }
+        char c = s.charAt(start);
+        if (c == '(') {
+            int i = scanLiteral(s, start + 1, end);
+            return ((i > 0) && (i < end) && (s.charAt(i) == ')')) ? i + 1 : -1;
+        }
+        if (c == '[') {
+            int i = start + 1;
+            while ((i < end) && (s.charAt(i) >= '0') && (s.charAt(i) <= '9')) {
+                i++;
+            }
+            return ((i > start + 1) && (i < end) && (s.charAt(i) == ']')) ? i + 1 : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index following the path of the template, -1 if none.
+     */
+    static int scanPath(String s, int start, int end) {
+        int i = start;
+        while ((i < end) && isLiteral(s.charAt(i), ROOT_CHARS)) {
+            i++;
+        }
+        if (i == start) {
+            i = scanElement(s, start, end);
+            if (i < 0) {
+                return -1;
+            }
+        }
+
+        while (i < end) {
+            int next;
+            if (s.charAt(i) == '.') {
+                next = scanLiteral(s, i + 1, end);
+            } else {
+                next = scanElement(s, i, end);
+            }
+            if (next < 0) {
+                return i;
+            }
+            i = next;
+        }
+        return i;
+    }
     
     protected InjectionTemplate createTemplate(String n, String v, String[][] args) {
         return new InjectionTemplate(n, v, args);
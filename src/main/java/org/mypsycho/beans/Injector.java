@@ -7,16 +7,23 @@ package org.mypsycho.beans;
 import java.beans.ExceptionListener;
 import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.collections.FastHashMap;
 import org.mypsycho.beans.converter.ConverterContainer;
 import org.mypsycho.beans.converter.TypeConverter;
+import org.mypsycho.util.CachePolicy;
+import org.mypsycho.util.PolicyCache;
+import org.mypsycho.util.PolicyCacheMBean;
 import org.mypsycho.util.PropertiesLoader;
 
 
@@ -35,16 +42,16 @@ public class Injector extends PropertyUtilsBean {
     public static final String DEFAULT_NULL_TAG = "@null";
 
 
-    private static String createKey(Locale locale, Class<?> since) {
-        String className = since.getCanonicalName();
-        if (className == null) { // anonymous or inner
-            className = since.getName();
-        }
-        return locale + "@" + className;
-    }
+    // Concurrent maps do not support null key
+    private static final Object DEFAULT_LOCALE_KEY = new Object();
 
-    @SuppressWarnings("unchecked")
-    Map<String, InjectDescriptor> descriptors = new FastHashMap(); // ThreadSafe
+    // Descriptors by class then locale: classes are weakly referenced and the
+    // strength of the policy applies to descriptors, which reference their class
+    volatile PolicyCache<Class<?>, PolicyCache<Object, InjectDescriptor>> descriptors =
+            createInjectionCache(0);
+    volatile CachePolicy.Strength descriptorsStrength = CachePolicy.Strength.SOFT;
+    final AtomicLong descriptorHits = new AtomicLong();
+    final AtomicLong descriptorMisses = new AtomicLong();
 
     Locale locale = Locale.getDefault();
     ConverterContainer converter = new ConverterContainer();
@@ -52,12 +59,24 @@ public class Injector extends PropertyUtilsBean {
     InjectionTemplate template = new InjectionTemplate();
 
 
+    // Null when injection is not profiled
+    volatile InjectionProfiler profiler = null;
+
+    // Listener of modified bundles while watching
+    PropertiesLoader.ReloadListener reloadListener = null;
+
     ExceptionListener exceptionHandler = null;
     // Cannot use a Set as property descriptor has a unextensive equals
     // Cannot use a Set as preemptive order is not defined.
     List<DescriptorExtension> extensions = new ArrayList<DescriptorExtension>();
 
-    private final static PropertiesLoader DEFAULT_LOADER = new PropertiesLoader() {
+    /**
+     * Loader of the bundles stopping at the {@link Inject#until()} class.
+     * <p>
+     * Each injector owns a loader: caches, globals and watching are not shared.
+     * </p>
+     */
+    static class InjectLoader extends PropertiesLoader {
 
         @Override
         protected Class<?> until(Class<?> type) {
@@ -69,15 +88,23 @@ public class Injector extends PropertyUtilsBean {
             }
             return inject.until();
         }
-    };
+    }
 
-    private PropertiesLoader valuesLoader = DEFAULT_LOADER;
+    private final PropertiesLoader valuesLoader = new InjectLoader();
+    // Batched injections call the overriding inject(Object, Locale, String, T)
+    private final boolean injectOverridden = isInjectOverridden(getClass());
     private String deprecated = DEFAULT_DEPRECATED_TAG;
     private String nullTag = DEFAULT_NULL_TAG;
     
+    /**
+     * Creates an injector using a {@link CachedInvoker}.
+     * <p>
+     * Subclasses may call {@link #setInvoker(Invoker)} with an
+     * {@link ExtensionInvoker} to resolve accessors on each access.
+     * </p>
+     */
     public Injector() {
-        ((FastHashMap) descriptors).setFast(true);
-        setInvoker(new ExtensionInvoker());
+        setInvoker(new CachedInvoker());
     }
 
     public void addGlobals(Map<?, ?> globals) {
@@ -119,17 +146,362 @@ public class Injector extends PropertyUtilsBean {
             return null;
         }
 
-        String key = createKey(locale, parent.getClass());
-        InjectDescriptor descr = descriptors.get(key);
+        inject(getDescriptor(locale, parent.getClass()), parent, path, element);
+        return element;
+    }
+
+    void inject(InjectDescriptor descr, Object parent, String path, Object element) {
+        InjectionProfiler current = profiler;
+        if (current == null) {
+            descr.inject(parent, path, element);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            descr.inject(parent, path, element);
+        } finally {
+            current.injected(parent.getClass(), System.nanoTime() - start);
+        }
+    }
+
+    static boolean isInjectOverridden(Class<?> type) {
+        try {
+            return type.getMethod("inject", Object.class, Locale.class, String.class,
+                    Object.class).getDeclaringClass() != Injector.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Inject a bean of a batch sharing the same locale.
+     * <p>
+     * The descriptor is fetched once per class of the batch. When
+     * {@link #inject(Object, Locale, String, Object)} is overridden, the override
+     * is called instead.
+     * </p>
+     *
+     * @param batch descriptors of the batch by class, initially empty
+     * @param bean bean to inject
+     * @param locale locale of the batch
+     * @return the injected bean
+     */
+    public <T> T injectBatched(Map<Class<?>, InjectDescriptor> batch, T bean, Locale locale) {
+        if (bean == null) {
+            return null;
+        }
+        if (injectOverridden) {
+            return inject(bean, locale, null, bean);
+        }
+        InjectDescriptor descr = batch.get(bean.getClass());
         if (descr == null) {
-            descr = createDescriptor(locale, parent.getClass());
-            if (!descr.hasChildren()) {
-                descr = InjectDescriptor.EMPTY;
+            descr = getDescriptor(locale, bean.getClass());
+            batch.put(bean.getClass(), descr);
+        }
+        inject(descr, bean, null, bean);
+        return bean;
+    }
+
+    /**
+     * Inject several beans with the same locale, in the iteration order.
+     * <p>
+     * The descriptor is fetched once per class of beans.
+     * </p>
+     *
+     * @param beans beans to inject
+     * @param locale locale of the beans
+     */
+    public void injectAll(Iterable<?> beans, Locale locale) {
+        Map<Class<?>, InjectDescriptor> batch = new HashMap<Class<?>, InjectDescriptor>();
+        for (Object bean : beans) {
+            injectBatched(batch, bean, locale);
+        }
+    }
+
+    /**
+     * Prepare the injection of beans.
+     * <p>
+     * Descriptors are compiled and the definitions independent of the bean state
+     * (texts, numbers, shared values) are converted, so the injection of the beans
+     * only calls their setters. No accessor of the beans is called: this method can
+     * be called out of the thread owning the beans. Failures are notified by the
+     * injection.
+     * </p>
+     *
+     * @param beans beans to prepare
+     * @param locale locale of the beans
+     */
+    public void prepare(Iterable<?> beans, Locale locale) {
+        Map<Class<?>, InjectDescriptor> batch = new HashMap<Class<?>, InjectDescriptor>();
+        for (Object bean : beans) {
+            if (bean == null) {
+                continue;
             }
-            descriptors.put(key, descr);
+            InjectDescriptor descr = batch.get(bean.getClass());
+            if (descr == null) {
+                try {
+                    descr = getDescriptor(locale, bean.getClass());
+                } catch (RuntimeException e) {
+                    notify(bean.getClass().getName() + "#", "preparation failed", e);
+                    descr = InjectDescriptor.EMPTY;
+                }
+                batch.put(bean.getClass(), descr);
+            }
+            descr.prepare(bean);
         }
-        descr.inject(parent, path, element);
-        return element;
+    }
+
+    /**
+     * Compile the injection descriptors of classes before their first injection.
+     * <p>
+     * This method can be called from any thread, failures are notified to the listener.
+     * </p>
+     *
+     * @param types classes to compile
+     * @param locale locale of the descriptors
+     */
+    public void precompile(Iterable<? extends Class<?>> types, Locale locale) {
+        for (Class<?> type : types) {
+            try {
+                getDescriptor(locale, type);
+            } catch (RuntimeException e) {
+                notify(type.getName() + "#", "precompilation failed", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the injection descriptor of a class, compiling it when needed.
+     *
+     * @param locale locale of the descriptor
+     * @param clazz injected class
+     * @return the descriptor
+     */
+    protected InjectDescriptor getDescriptor(Locale locale, Class<?> clazz) {
+        Object key = (locale != null) ? locale : DEFAULT_LOCALE_KEY;
+        PolicyCache<Class<?>, PolicyCache<Object, InjectDescriptor>> cache = descriptors;
+        PolicyCache<Object, InjectDescriptor> byLocale = cache.get(clazz);
+        if (byLocale == null) {
+            byLocale = new CachePolicy(0, descriptorsStrength)
+                    .<Object, InjectDescriptor> createCache();
+            PolicyCache<Object, InjectDescriptor> previous = cache.putIfAbsent(clazz, byLocale);
+            if (previous != null) {
+                byLocale = previous;
+            }
+        }
+
+        InjectDescriptor descr = byLocale.get(key);
+        if (descr != null) {
+            descriptorHits.incrementAndGet();
+            return descr;
+        }
+
+        descriptorMisses.incrementAndGet();
+        InjectionProfiler current = profiler;
+        long start = (current != null) ? System.nanoTime() : 0L;
+        descr = createDescriptor(locale, clazz);
+        if (current != null) {
+            current.compiled(clazz, locale, System.nanoTime() - start);
+        }
+        if (!descr.hasChildren()) {
+            descr = InjectDescriptor.EMPTY;
+        }
+        InjectDescriptor previous = byLocale.putIfAbsent(key, descr);
+        return (previous != null) ? previous : descr;
+    }
+
+    /**
+     * Returns the number of injections using an already compiled descriptor.
+     *
+     * @return the count of cache hits
+     */
+    public long getDescriptorHits() {
+        return descriptorHits.get();
+    }
+
+    /**
+     * Returns the number of descriptors compilations.
+     *
+     * @return the count of cache misses
+     */
+    public long getDescriptorMisses() {
+        return descriptorMisses.get();
+    }
+
+    /**
+     * Returns the number of compiled descriptors.
+     *
+     * @return the size of the descriptor cache
+     */
+    public int getDescriptorCount() {
+        int count = 0;
+        for (PolicyCache<Object, InjectDescriptor> byLocale : descriptors.values()) {
+            count += byLocale.getSize();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the statistics of the injection descriptors cache.
+     * <p>
+     * Entries of this cache are classes, all locales of a class are evicted together.
+     * Classes are weakly referenced.
+     * </p>
+     *
+     * @return the cache statistics
+     */
+    public PolicyCacheMBean getInjectionCache() {
+        return descriptors;
+    }
+
+    /**
+     * Sets the policy of the property descriptors, the injection descriptors and
+     * the bundles caches.
+     * <p>
+     * Cached information is lost.
+     * </p>
+     * <p>
+     * Injection descriptors are cached by weakly referenced classes, the maximum
+     * count applies to classes and the strength to descriptors. As descriptors
+     * reference their class, strong values prevent classes unloading; the default
+     * strength is soft.
+     * </p>
+     *
+     * @param policy the policy to apply
+     */
+    @Override
+    public void setCachePolicy(CachePolicy policy) {
+        super.setCachePolicy(policy);
+        descriptorsStrength = policy.getValues();
+        descriptors = createInjectionCache(policy.getMaxEntries());
+        valuesLoader.setCachePolicy(policy);
+    }
+
+    static PolicyCache<Class<?>, PolicyCache<Object, InjectDescriptor>> createInjectionCache(
+            int maxEntries) {
+        CachePolicy policy = new CachePolicy(maxEntries, CachePolicy.Strength.STRONG);
+        policy.setWeakKeys(true);
+        return policy.<Class<?>, PolicyCache<Object, InjectDescriptor>> createCache();
+    }
+
+    /**
+     * Returns the profiler of injections.
+     *
+     * @return the profiler or null if injection is not profiled
+     */
+    public InjectionProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Sets the profiler of injections.
+     * <p>
+     * Injections already started keep the previous profiler.
+     * </p>
+     *
+     * @param profiler the profiler or null to stop profiling
+     * @see InjectionReport
+     */
+    public void setProfiler(InjectionProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Returns the statistics of the bundles cache.
+     *
+     * @return the cache statistics
+     */
+    public PolicyCacheMBean getBundlesCache() {
+        return valuesLoader.getCache();
+    }
+
+    /**
+     * Watches the .properties files of the injected classes.
+     * <p>
+     * When a file is modified, the descriptors of the classes using it are
+     * compiled again on next injection and
+     * {@link #descriptorsInvalidated(Set)} is called. Other descriptors are kept.
+     * </p>
+     *
+     * @param period polling period in milliseconds, 0 to stop watching
+     * @see PropertiesLoader#setWatchPeriod(long)
+     */
+    public synchronized void setWatchPeriod(long period) {
+        if (period > 0) {
+            if (reloadListener == null) {
+                reloadListener = new PropertiesLoader.ReloadListener() {
+
+                    @Override
+                    public void bundlesChanged(Set<String> basenames) {
+                        invalidateDescriptors(basenames);
+                    }
+                };
+                valuesLoader.addReloadListener(reloadListener);
+            }
+        } else if (reloadListener != null) {
+            valuesLoader.removeReloadListener(reloadListener);
+            reloadListener = null;
+        }
+        valuesLoader.setWatchPeriod(period);
+    }
+
+    /**
+     * Removes the descriptors of the classes using modified bundles.
+     * <p>
+     * A class uses the bundles of its hierarchy and the bundles referenced by
+     * the values of its descriptors.
+     * </p>
+     *
+     * @param basenames names of the modified bundles
+     * @return the classes whose descriptors are removed
+     */
+    protected Set<Class<?>> invalidateDescriptors(Set<String> basenames) {
+        Set<Class<?>> types = new HashSet<Class<?>>();
+        PolicyCache<Class<?>, PolicyCache<Object, InjectDescriptor>> cache = descriptors;
+        for (Class<?> type : cache.keys()) {
+            if (isUsing(type, cache, basenames)) {
+                cache.remove(type);
+                types.add(type);
+            }
+        }
+        if (!types.isEmpty()) {
+            descriptorsInvalidated(types);
+        }
+        return types;
+    }
+
+    boolean isUsing(Class<?> type,
+            PolicyCache<Class<?>, PolicyCache<Object, InjectDescriptor>> cache,
+            Set<String> basenames) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            if (basenames.contains(c.getName())) {
+                return true;
+            }
+        }
+        PolicyCache<Object, InjectDescriptor> byLocale = cache.get(type);
+        if (byLocale == null) { // evicted meanwhile
+            return false;
+        }
+        for (InjectDescriptor descr : byLocale.values()) {
+            Set<String> used = valuesLoader.getBundleNames(descr.source);
+            if (!Collections.disjoint(used, basenames)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called by the watching thread when the descriptors of classes are removed.
+     * <p>
+     * Beans of these classes may be injected again.
+     * </p>
+     *
+     * @param types classes whose bundles are modified
+     */
+    protected void descriptorsInvalidated(Set<Class<?>> types) {
+        // nothing by default
     }
 
     /**
@@ -188,6 +560,15 @@ public class Injector extends PropertyUtilsBean {
         return extendeds.toArray(new PropertyDescriptor[extendeds.size()]);
     }
 
+    /**
+     * Clear the property descriptors and the injection descriptors compiled with them.
+     */
+    @Override
+    public void clearDescriptors() {
+        super.clearDescriptors();
+        descriptors.clear();
+    }
+
     /**
      * Do something TODO.
      * <p>
@@ -201,6 +582,33 @@ public class Injector extends PropertyUtilsBean {
         return valuesLoader.getProperties(type, locale);
     }
 
+    /**
+     * Writes the compiled bundle of a class, as merged by this injector.
+     *
+     * @param type class of the bundle
+     * @param locale locale of the bundle
+     * @param output stream to write, not closed
+     * @throws IOException if writing fails
+     * @see BundleCompiler
+     */
+    public void writeCompiled(Class<?> type, Locale locale, OutputStream output)
+            throws IOException {
+        valuesLoader.writeCompiled(type, locale, output);
+    }
+
+    /**
+     * Sets whether compiled bundles are read.
+     * <p>
+     * Applications enable it when their build runs the {@link BundleCompiler}.
+     * </p>
+     *
+     * @param compiled true to read compiled bundles when present
+     * @see PropertiesLoader#setCompiledBundles(boolean)
+     */
+    public void setCompiledBundles(boolean compiled) {
+        valuesLoader.setCompiledBundles(compiled);
+    }
+
     /**
      * Returns the locale.
      *
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2011 Peransin Nicolas.
+ * Use is subject to license terms.
+ */
+package org.mypsycho.beans;
+
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.beanutils.expression.Resolver;
+
+
+/**
+ * Parsed form of a property expression like <code>a.b[3](key).c</code>.
+ * <p>
+ * A path is parsed once by {@link PropertyUtilsBean#getPropertyPath(String)}.
+ * Each element remembers the property descriptor resolved for the last bean class,
+ * so evaluating the same path on beans of the same classes does not allocate.
+ * </p>
+ * <p>
+ * Paths are immutable and can be shared between threads and property utilities.
+ * </p>
+ *
+ * @author Peransin Nicolas
+ */
+public final class PropertyPath {
+
+    /** Kind of access of an element */
+    enum Access {
+        SIMPLE, INDEXED, MAPPED,
+        /** Unusual syntax, evaluated by the expression based methods */
+        DELEGATED
+    }
+
+    /** Descriptor resolved for a bean class */
+    static final class Resolved {
+
+        final PropertyUtilsBean owner;
+        final int generation;
+        final Class<?> type;
+        final PropertyDescriptor descriptor;
+
+        Resolved(PropertyUtilsBean owner, int generation, Class<?> type,
+                PropertyDescriptor descriptor) {
+            this.owner = owner;
+            this.generation = generation;
+            this.type = type;
+            this.descriptor = descriptor;
+        }
+    }
+
+    /** Element of a path, without nesting */
+    static final class Element {
+
+        final String expression;
+        final Access access;
+        final String name;
+        final int index;
+        final String key;
+
+        volatile Resolved resolved = null;
+
+        Element(Resolver resolver, String expr) {
+            expression = expr;
+            String property = resolver.getProperty(expr);
+            int i = -1;
+            String k = null;
+            Access kind = Access.DELEGATED;
+
+            try {
+                if ((property == null) || (property.length() == 0)) {
+                    // direct access on collection
+                } else if (resolver.isMapped(expr)) {
+                    k = resolver.getKey(expr);
+                    kind = (k != null) ? Access.MAPPED : Access.DELEGATED;
+                } else if (resolver.isIndexed(expr)) {
+                    i = resolver.getIndex(expr);
+                    kind = (i >= 0) ? Access.INDEXED : Access.DELEGATED;
+                } else {
+                    kind = Access.SIMPLE;
+                }
+            } catch (IllegalArgumentException e) {
+                kind = Access.DELEGATED; // reported on evaluation
+            }
+            name = property;
+            index = i;
+            key = k;
+            access = kind;
+        }
+
+        PropertyDescriptor getDescriptor(PropertyUtilsBean owner, int generation, Class<?> type) {
+            Resolved last = resolved;
+            if ((last != null) && (last.type == type) && (last.owner == owner)
+                    && (last.generation == generation)) {
+                return last.descriptor;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return expression;
+        }
+    }
+
+    final String expression;
+    final Element[] elements;
+
+    /**
+     * Parse an expression.
+     *
+     * @param resolver resolver of the syntax
+     * @param expr expression to parse
+     */
+    PropertyPath(Resolver resolver, String expr) {
+        if (expr == null) {
+            throw new IllegalArgumentException("No name specified");
+        }
+        expression = expr;
+
+        List<Element> parsed = new ArrayList<Element>();
+        String remaining = expr;
+        while (resolver.hasNested(remaining)) {
+            parsed.add(new Element(resolver, resolver.next(remaining)));
+            remaining = resolver.remove(remaining);
+        }
+        parsed.add(new Element(resolver, remaining));
+        elements = parsed.toArray(new Element[parsed.size()]);
+    }
+
+    /**
+     * Returns the parsed expression.
+     *
+     * @return the expression
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the count of nested elements.
+     *
+     * @return the length of the path
+     */
+    public int getLength() {
+        return elements.length;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -35,6 +35,9 @@ import org.apache.commons.beanutils.MethodUtils;
 import org.apache.commons.beanutils.NestedNullException;
 import org.apache.commons.beanutils.expression.DefaultResolver;
 import org.apache.commons.beanutils.expression.Resolver;
+import org.mypsycho.util.CachePolicy;
+import org.mypsycho.util.PolicyCache;
+import org.mypsycho.util.PolicyCacheMBean;
 
 
 
@@ -131,7 +134,14 @@ public class PropertyUtilsBean {
      * The cache of PropertyDescriptor arrays for beans we have already
      * introspected, keyed by the java.lang.Class of this object.
      */
-    private WeakFastHashMap<Class<?>, PropertyDescriptor[]> descriptorsCache = null;
+    private volatile PolicyCache<Class<?>, DescriptorTable> descriptorsCache = null;
+
+    /** Incremented when cached descriptors are deprecated */
+    private volatile int descriptorsGeneration = 0;
+
+    /** Parsed expressions */
+    private final PolicyCache<String, PropertyPath> paths =
+            new CachePolicy(0, CachePolicy.Strength.SOFT).<String, PropertyPath> createCache();
 
     private static final Class<?>[] EMPTY_CLASS_PARAMETERS = new Class[0];
     private static final Class<?>[] LIST_CLASS_PARAMETER = new Class[] { java.util.List.class };
@@ -148,8 +158,31 @@ public class PropertyUtilsBean {
 
     /** Base constructor */
     public PropertyUtilsBean() {
-        descriptorsCache = new WeakFastHashMap<Class<?>, PropertyDescriptor[]>();
-        descriptorsCache.setFast(true);
+        // Soft values: descriptors reference their class
+        descriptorsCache = new CachePolicy(0, CachePolicy.Strength.SOFT)
+                .<Class<?>, DescriptorTable> createCache();
+    }
+
+    /**
+     * Sets the policy of the caches.
+     * <p>
+     * Cached information is lost.
+     * </p>
+     *
+     * @param policy the policy to apply
+     */
+    public void setCachePolicy(CachePolicy policy) {
+        descriptorsCache = policy.<Class<?>, DescriptorTable> createCache();
+        descriptorsGeneration++;
+    }
+
+    /**
+     * Returns the statistics of the property descriptors cache.
+     *
+     * @return the cache statistics
+     */
+    public PolicyCacheMBean getDescriptorsCache() {
+        return descriptorsCache;
     }
 
     public void register(UtilsListener l) {
@@ -219,6 +252,29 @@ public class PropertyUtilsBean {
         } else {
             this.resolver = resolver;
         }
+        paths.clear();
+    }
+
+    /**
+     * Return the parsed form of a property expression.
+     * <p>
+     * Paths are cached by expression.
+     * </p>
+     *
+     * @param name Possibly indexed and/or nested name of a property
+     * @return the parsed path
+     * @exception IllegalArgumentException if <code>name</code> is null
+     */
+    public PropertyPath getPropertyPath(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("No name specified");
+        }
+        PropertyPath path = paths.get(name);
+        if (path == null) {
+            path = new PropertyPath(resolver, name);
+            paths.put(name, path);
+        }
+        return path;
     }
 
     /**
@@ -229,6 +285,7 @@ public class PropertyUtilsBean {
     public void clearDescriptors() {
 
         descriptorsCache.clear();
+        descriptorsGeneration++;
         Introspector.flushCaches();
 
     }
@@ -657,6 +714,80 @@ public class PropertyUtilsBean {
         return (getNestedProperty(bean, name));
     }
 
+    /**
+     * Return the value of the property of a parsed path, for the specified bean,
+     * with no type conversions.
+     * <p>
+     * The result is the same as {@link #getProperty(Object, String)} with the
+     * expression of the path, without parsing it again.
+     * </p>
+     *
+     * @param bean Bean whose property is to be extracted
+     * @param path Parsed path of the property
+     * @return the property value
+     * @exception IllegalAccessException if the caller does not have
+     *            access to the property accessor method
+     * @exception IllegalArgumentException if <code>bean</code> is null
+     * @exception NestedNullException if a nested reference to a
+     *            property returns null
+     * @exception InvocationTargetException if the property accessor method
+     *            throws an exception
+     * @exception NoSuchMethodException if an accessor method for this
+     *            propety cannot be found
+     */
+    public Object getProperty(Object bean, PropertyPath path)
+            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        return getProperty(resolveNested(bean, path), path.elements[path.elements.length - 1]);
+    }
+
+    Object resolveNested(Object bean, PropertyPath path)
+            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        if (bean == null) {
+            throw new IllegalArgumentException("No bean specified");
+        }
+
+        PropertyPath.Element[] elements = path.elements;
+        for (int i = 0; i < elements.length - 1; i++) {
+            Object nestedBean = getProperty(bean, elements[i]);
+            if (nestedBean == null) {
+                throw new NestedNullException("Null property value for '" + elements[i] +
+                        "' on bean class '" + bean.getClass() + "'");
+            }
+            bean = nestedBean;
+        }
+        return bean;
+    }
+
+    Object getProperty(Object bean, PropertyPath.Element element)
+            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        if (bean instanceof Map) {
+            return getPropertyOfMapBean((Map<?, ?>) bean, element.expression);
+        }
+
+        switch (element.access) {
+        case SIMPLE:
+            return invoker.get(bean, getRequiredDescriptor(bean, element));
+        case INDEXED:
+            return invoker.get(bean, getRequiredDescriptor(bean, element), element.index);
+        case MAPPED:
+            return invoker.get(bean, getRequiredDescriptor(bean, element), element.key);
+        default:
+            return getNestedProperty(bean, element.expression);
+        }
+    }
+
+    PropertyDescriptor getRequiredDescriptor(Object bean, PropertyPath.Element element)
+            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        Class<?> type = bean.getClass();
+        int generation = descriptorsGeneration;
+        PropertyDescriptor descriptor = element.getDescriptor(this, generation, type);
+        if (descriptor == null) {
+            descriptor = getRequiredDescriptor(bean, element.name);
+            element.resolved = new PropertyPath.Resolved(this, generation, type, descriptor);
+        }
+        return descriptor;
+    }
+
 
     /**
      * <p>
@@ -683,32 +814,22 @@ public class PropertyUtilsBean {
      */
     public PropertyDescriptor getPropertyDescriptor(Class<?> beanClass, String name)
             throws NoSuchMethodException {
-        PropertyDescriptor[] descriptors = getPropertyDescriptors(beanClass);
-
-        for (PropertyDescriptor descriptor : descriptors) {
-            if (name.equals(descriptor.getName())) {
-                if (descriptor instanceof StubDescriptor) {
-                    throw new NoSuchMethodException("No property '" + name + "' at "
-                            + beanClass.getName());
-                }
-                return (descriptor);
-            }
-        }
+        DescriptorTable table = getDescriptorTable(beanClass);
+        PropertyDescriptor result = table.get(name);
 
-        PropertyDescriptor result;
-        try {
-            result = new MappedPropertyDescriptor(name, beanClass);
-        } catch (IntrospectionException ie) {
+        if (result == null) {
             try {
-                result = new StubDescriptor(name);
-            } catch (IntrospectionException e) {
-                return null;
+                result = new MappedPropertyDescriptor(name, beanClass);
+            } catch (IntrospectionException ie) {
+                try {
+                    result = new StubDescriptor(name);
+                } catch (IntrospectionException e) {
+                    return null;
+                }
             }
+            // Missing properties are remembered but not listed
+            result = table.add(result, !(result instanceof StubDescriptor));
         }
-        PropertyDescriptor[] newDescriptors = new PropertyDescriptor[descriptors.length + 1];
-        System.arraycopy(descriptors, 0, newDescriptors, 0, descriptors.length);
-        newDescriptors[descriptors.length] = result;
-        descriptorsCache.put(beanClass, newDescriptors);
 
         if (result instanceof StubDescriptor) {
             throw new NoSuchMethodException("No property '" + name + "' at "
@@ -779,23 +900,34 @@ public class PropertyUtilsBean {
             throw new IllegalArgumentException("No bean class specified");
         }
 
+        return getDescriptorTable(beanClass).getDescriptors();
+    }
+
+    /**
+     * Retrieve the descriptor table of a class, introspecting the class the first time
+     * it is encountered.
+     *
+     * @param beanClass Bean class for which property descriptors are requested
+     * @return the descriptor table
+     */
+    DescriptorTable getDescriptorTable(Class<?> beanClass) {
+        PolicyCache<Class<?>, DescriptorTable> cache = descriptorsCache;
         // Look up any cached descriptors for this bean class
-        PropertyDescriptor[] descriptors = null;
-        descriptors =
-                descriptorsCache.get(beanClass);
-        if (descriptors != null) {
-            return (descriptors);
+        DescriptorTable table = cache.get(beanClass);
+        if (table != null) {
+            return table;
         }
 
+        PropertyDescriptor[] descriptors;
         try {
             descriptors = createDescriptorsCache(beanClass);
-            descriptorsCache.put(beanClass, descriptors);
-            return (descriptors);
-
         } catch (IntrospectionException e) {
-            return (new PropertyDescriptor[0]);
+            return new DescriptorTable(new PropertyDescriptor[0]);
         }
 
+        table = new DescriptorTable(descriptors);
+        DescriptorTable previous = cache.putIfAbsent(beanClass, table);
+        return (previous != null) ? previous : table;
     }
 
     /**
@@ -1502,6 +1634,54 @@ public class PropertyUtilsBean {
         setNestedProperty(bean, name, value);
     }
 
+    /**
+     * Set the value of the property of a parsed path, for the specified bean,
+     * with no type conversions.
+     * <p>
+     * The result is the same as {@link #setProperty(Object, String, Object)} with the
+     * expression of the path, without parsing it again.
+     * </p>
+     *
+     * @param bean Bean whose property is to be modified
+     * @param path Parsed path of the property
+     * @param value Value to which this property is to be set
+     * @exception IllegalAccessException if the caller does not have
+     *            access to the property accessor method
+     * @exception IllegalArgumentException if <code>bean</code> is null
+     * @exception NestedNullException if a nested reference to a
+     *            property returns null
+     * @exception InvocationTargetException if the property accessor method
+     *            throws an exception
+     * @exception NoSuchMethodException if an accessor method for this
+     *            propety cannot be found
+     */
+    public void setProperty(Object bean, PropertyPath path, Object value)
+            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        bean = resolveNested(bean, path);
+        PropertyPath.Element element = path.elements[path.elements.length - 1];
+
+        if (bean instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, ?> map = (Map<String, ?>) bean;
+            setPropertyOfMapBean(map, element.expression, value);
+            return;
+        }
+
+        switch (element.access) {
+        case SIMPLE:
+            invoker.set(bean, getRequiredDescriptor(bean, element), value);
+            break;
+        case INDEXED:
+            invoker.set(bean, getRequiredDescriptor(bean, element), element.index, value);
+            break;
+        case MAPPED:
+            invoker.set(bean, getRequiredDescriptor(bean, element), element.key, value);
+            break;
+        default:
+            setNestedProperty(bean, element.expression, value);
+        }
+    }
+
     /**
      * Set the value of the specified simple property of the specified bean,
      * with no type conversions.
@@ -16,69 +16,132 @@
  */
 package org.mypsycho.beans;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.Collection;
-import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 
 /**
  * <p>
- * A customized implementation of <code>java.util.HashMap</code> designed to
- * operate in a multithreaded environment where the large majority of method
- * calls are read-only, instead of structural changes. When operating in "fast"
- * mode, read calls are non-synchronized and write calls perform the following
- * steps:
+ * A map with weak keys designed to operate in a multithreaded environment.
  * </p>
- * <ul>
- * <li>Clone the existing collection
- * <li>Perform the modification on the clone
- * <li>Replace the existing collection with the (modified) clone
- * </ul>
  * <p>
- * When first created, objects of this class default to "slow" mode, where all
- * accesses of any type are synchronized but no cloning takes place. This is
- * appropriate for initially populating the collection, followed by a switch to
- * "fast" mode (by calling <code>setFast(true)</code>) after initialization is
- * complete.
+ * Entries are held by a concurrent map: reads are never locked and writes do
+ * not copy the content. As in <code>java.util.WeakHashMap</code>, keys are
+ * weakly referenced and compared with <code>equals</code>; entries whose key has
+ * been reclaimed are removed through a reference queue on the next access.
  * </p>
  * <p>
- * <strong>NOTE</strong>: If you are creating and accessing a
- * <code>HashMap</code> only within a single thread, you should use
- * <code>java.util.HashMap</code> directly (with no synchronization), for
- * maximum performance.
+ * Null keys and values are supported. Iterators are weakly consistent: they never
+ * throw <code>ConcurrentModificationException</code>.
  * </p>
  * <p>
- * <strong>NOTE</strong>: <i>This class is not cross-platform. Using it may
- * cause unexpected failures on some architectures.</i> It suffers from the same
- * problems as the double-checked locking idiom. In particular, the instruction
- * that clones the internal collection and the instruction that sets the
- * internal reference to the clone can be executed or perceived out-of-order.
- * This means that any read operation might fail unexpectedly, as it may be
- * reading the state of the internal collection before the internal collection
- * is fully formed. For more information on the double-checked locking idiom,
- * see the <a href=
- * "http://www.cs.umd.edu/~pugh/java/memoryModel/DoubleCheckedLocking.html">
- * Double-Checked Locking Idiom Is Broken Declaration</a>.
+ * The "fast" mode of the previous clone-on-write implementation is kept for
+ * compatibility only: all accesses are now concurrent.
+ * </p>
+ * <p>
+ * The inherited <code>HashMap</code> table stays empty: every method of
+ * <code>HashMap</code>, including the default methods of Java 8, is overridden to
+ * use the concurrent map. Those methods are never linked on older runtimes, but
+ * compiling this class requires the Java 8 class library.
  * </p>
  *
  * @since Commons Collections 1.0
- * @version $Revision: 687089 $ $Date: 2008-08-19 17:33:30 +0100 (Tue, 19 Aug
- *          2008) $
  * @author Craig R. McClanahan
  * @author Stephen Colebourne
+ * @author Peransin Nicolas
  */
 public class WeakFastHashMap<K, V> extends HashMap<K, V> {
 
     private static final long serialVersionUID = 5325467134228088859L;
 
+    /** Mask of the null key, strongly referenced. */
+    static final Object NULL_KEY = new Object();
+
+    /** Mask of null values, unsupported by concurrent maps. */
+    static final Object NULL_VALUE = new Object();
+
+    /**
+     * Stored key: a weak reference which hash and equality are the ones of the referent.
+     */
+    static final class WeakKey extends WeakReference<Object> {
+
+        final int hash;
+
+        WeakKey(Object key, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            hash = key.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            Object referent = get();
+            if ((referent == null) || !(o instanceof WeakKey)) {
+                return false; // reclaimed keys only match themselves
+            }
+            Object other = ((WeakKey) o).get();
+            return (referent == other) || referent.equals(other);
+        }
+    }
+
+    /**
+     * Key used to search a stored key.
+     */
+    static final class LookupKey {
+
+        final Object key;
+
+        LookupKey(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WeakKey)) {
+                return false;
+            }
+            Object referent = ((WeakKey) o).get();
+            return (referent == key) || key.equals(referent);
+        }
+    }
+
     /**
      * The underlying map we are managing.
      */
-    volatile private Map<K, V> map = null;
+    private transient ConcurrentHashMap<Object, Object> map;
+
+    /**
+     * Queue of reclaimed keys.
+     */
+    private transient ReferenceQueue<Object> queue;
 
     /**
      * Are we currently operating in "fast" mode?
@@ -92,8 +155,7 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      * Construct an empty map.
      */
     public WeakFastHashMap() {
-        super();
-        map = createMap();
+        this(16);
     }
 
     /**
@@ -102,8 +164,7 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      * @param capacity the initial capacity of the empty map
      */
     public WeakFastHashMap(int capacity) {
-        super();
-        map = createMap(capacity);
+        this(capacity, 0.75f);
     }
 
     /**
@@ -113,8 +174,9 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      * @param factor the load factor of the new map
      */
     public WeakFastHashMap(int capacity, float factor) {
-        super();
-        map = createMap(capacity, factor);
+        super(1);
+        map = new ConcurrentHashMap<Object, Object>(capacity, factor);
+        queue = new ReferenceQueue<Object>();
     }
 
     /**
@@ -123,8 +185,8 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      * @param map the map whose mappings are to be copied
      */
     public WeakFastHashMap(Map<K, V> map) {
-        super();
-        this.map = createMap(map);
+        this(Math.max(16, map.size() * 2));
+        putAll(map);
     }
 
     // Property access
@@ -141,6 +203,9 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
 
     /**
      * Sets whether this map is operating in fast mode.
+     * <p>
+     * This flag has no effect: accesses are always concurrent.
+     * </p>
      *
      * @param fast true if this map should operate in fast mode
      */
@@ -148,10 +213,51 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
         this.fast = fast;
     }
 
+    // Masking
+    // ----------------------------------------------------------------------
+
+    Object lookupKey(Object key) {
+        return (key == null) ? NULL_KEY : new LookupKey(key);
+    }
+
+    Object storedKey(Object key) {
+        return (key == null) ? NULL_KEY : new WeakKey(key, queue);
+    }
+
+    static Object maskValue(Object value) {
+        return (value == null) ? NULL_VALUE : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T unmaskValue(Object value) {
+        return (value == NULL_VALUE) ? null : (T) value;
+    }
+
+    /**
+     * Returns the key of a stored key.
+     *
+     * @param stored the stored key
+     * @return the key, or the stored key itself if reclaimed
+     */
+    static Object unmaskKey(Object stored) {
+        if (stored == NULL_KEY) {
+            return null;
+        }
+        Object key = ((WeakKey) stored).get();
+        return (key != null) ? key : stored;
+    }
+
+    /**
+     * Remove the entries whose key has been reclaimed.
+     */
+    void expungeStaleEntries() {
+        for (Reference<?> ref = queue.poll(); ref != null; ref = queue.poll()) {
+            map.remove(ref); // a reclaimed key only matches itself
+        }
+    }
+
     // Map access
     // ----------------------------------------------------------------------
-    // These methods can forward straight to the wrapped Map in 'fast' mode.
-    // (because they are query methods)
 
     /**
      * Return the value to which this map maps the specified key. Returns
@@ -164,13 +270,8 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      */
     @Override
     public V get(Object key) {
-        if (fast) {
-            return (map.get(key));
-        } else {
-            synchronized (map) {
-                return (map.get(key));
-            }
-        }
+        expungeStaleEntries();
+        return unmaskValue(map.get(lookupKey(key)));
     }
 
     /**
@@ -180,13 +281,8 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      */
     @Override
     public int size() {
-        if (fast) {
-            return (map.size());
-        } else {
-            synchronized (map) {
-                return (map.size());
-            }
-        }
+        expungeStaleEntries();
+        return map.size();
     }
 
     /**
@@ -196,13 +292,7 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      */
     @Override
     public boolean isEmpty() {
-        if (fast) {
-            return (map.isEmpty());
-        } else {
-            synchronized (map) {
-                return (map.isEmpty());
-            }
-        }
+        return size() == 0;
     }
 
     /**
@@ -214,13 +304,8 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      */
     @Override
     public boolean containsKey(Object key) {
-        if (fast) {
-            return (map.containsKey(key));
-        } else {
-            synchronized (map) {
-                return (map.containsKey(key));
-            }
-        }
+        expungeStaleEntries();
+        return map.containsKey(lookupKey(key));
     }
 
     /**
@@ -232,25 +317,13 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      */
     @Override
     public boolean containsValue(Object value) {
-        if (fast) {
-            return (map.containsValue(value));
-        } else {
-            synchronized (map) {
-                return (map.containsValue(value));
-            }
-        }
+        expungeStaleEntries();
+        return map.containsValue(maskValue(value));
     }
 
-    // Map modification
-    // ----------------------------------------------------------------------
-    // These methods perform special behaviour in 'fast' mode.
-    // The map is cloned, updated and then assigned back.
-    // See the comments at the top as to why this won't always work.
-
     /**
      * Associate the specified value with the specified key in this map.
-     * If the map previously contained a mapping for this key, the old
-     * value is replaced and returned.
+     * If the map previously contained a mapping for this key, replace it.
      *
      * @param key the key with which the value is to be associated
      * @param value the value to be associated with this key
@@ -258,38 +331,195 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      */
     @Override
     public V put(K key, V value) {
-        if (fast) {
-            synchronized (this) {
-                Map<K, V> temp = cloneMap(map);
-                V result = temp.put(key, value);
-                map = temp;
-                return (result);
+        expungeStaleEntries();
+        return unmaskValue(map.put(storedKey(key), maskValue(value)));
+    }
+
+    /**
+     * Associate the specified value with the specified key if the map contains
+     * no mapping for this key.
+     *
+     * @param key the key with which the value is to be associated
+     * @param value the value to be associated with this key
+     * @return the value currently mapped to the key, or null if the value was added
+     */
+    public V putIfAbsent(K key, V value) {
+        expungeStaleEntries();
+        return unmaskValue(map.putIfAbsent(storedKey(key), maskValue(value)));
+    }
+
+    /**
+     * Return the value to which this map maps the specified key, or a default
+     * value if there is no mapping.
+     *
+     * @param key the key whose value is to be returned
+     * @param defaultValue the value returned when there is no mapping
+     * @return the value mapped to that key, or the default value
+     */
+    public V getOrDefault(Object key, V defaultValue) {
+        expungeStaleEntries();
+        Object value = map.get(lookupKey(key));
+        return (value != null) ? WeakFastHashMap.<V> unmaskValue(value) : defaultValue;
+    }
+
+    /**
+     * Remove the mapping of a key only if it is mapped to the specified value.
+     *
+     * @param key the key whose mapping is to be removed
+     * @param value the expected value
+     * @return true if the mapping was removed
+     */
+    public boolean remove(Object key, Object value) {
+        expungeStaleEntries();
+        return map.remove(lookupKey(key), maskValue(value));
+    }
+
+    /**
+     * Replace the value of a key only if it is mapped to the specified value.
+     *
+     * @param key the key whose value is to be replaced
+     * @param oldValue the expected value
+     * @param newValue the value to be associated with this key
+     * @return true if the value was replaced
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        expungeStaleEntries();
+        return map.replace(lookupKey(key), maskValue(oldValue), maskValue(newValue));
+    }
+
+    /**
+     * Replace the value of a key only if it is mapped.
+     *
+     * @param key the key whose value is to be replaced
+     * @param value the value to be associated with this key
+     * @return the previous value, or null if the key was not mapped
+     */
+    public V replace(K key, V value) {
+        expungeStaleEntries();
+        return unmaskValue(map.replace(lookupKey(key), maskValue(value)));
+    }
+
+    // Java 8 methods, as the defaults of ConcurrentMap: retried on concurrent changes
+    // ----------------------------------------------------------------------
+
+    /**
+     * Maps a key if it is absent or mapped to null, as HashMap does.
+     *
+     * @param key the key with which the value is to be associated
+     * @param value the value to be associated with this key
+     * @return true if the value was associated
+     */
+    boolean putIfNull(K key, V value) {
+        expungeStaleEntries();
+        Object previous = map.putIfAbsent(storedKey(key), maskValue(value));
+        return (previous == null) || ((previous == NULL_VALUE)
+                && map.replace(lookupKey(key), NULL_VALUE, maskValue(value)));
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        while (true) {
+            V oldValue = get(key);
+            if (oldValue != null) {
+                return oldValue;
+            }
+            V newValue = mappingFunction.apply(key);
+            if ((newValue == null) || putIfNull(key, newValue)) {
+                return newValue;
+            }
+        }
+    }
+
+    public V computeIfPresent(K key,
+            BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        V oldValue;
+        while ((oldValue = get(key)) != null) {
+            V newValue = remappingFunction.apply(key, oldValue);
+            if (newValue == null) {
+                if (remove(key, oldValue)) {
+                    return null;
+                }
+            } else if (replace(key, oldValue, newValue)) {
+                return newValue;
+            }
+        }
+        return null;
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        while (true) {
+            V oldValue = get(key);
+            V newValue = remappingFunction.apply(key, oldValue);
+            if (oldValue == null) {
+                if (newValue == null) {
+                    remove(key, null); // HashMap removes a null mapping
+                    return null;
+                }
+                if (putIfNull(key, newValue)) {
+                    return newValue;
+                }
+            } else if (newValue == null) {
+                if (remove(key, oldValue)) {
+                    return null;
+                }
+            } else if (replace(key, oldValue, newValue)) {
+                return newValue;
+            }
+        }
+    }
+
+    public V merge(K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            V oldValue = get(key);
+            if (oldValue == null) {
+                if (putIfNull(key, value)) {
+                    return value;
+                }
+                continue;
             }
-        } else {
-            synchronized (map) {
-                return (map.put(key, value));
+            V newValue = remappingFunction.apply(oldValue, value);
+            if (newValue == null) {
+                if (remove(key, oldValue)) {
+                    return null;
+                }
+            } else if (replace(key, oldValue, newValue)) {
+                return newValue;
+            }
+        }
+    }
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Map.Entry<K, V> e : entrySet()) {
+            action.accept(e.getKey(), e.getValue());
+        }
+    }
+
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        for (Map.Entry<K, V> e : entrySet()) {
+            K key = e.getKey();
+            V oldValue = e.getValue();
+            while (!replace(key, oldValue, function.apply(key, oldValue))) {
+                oldValue = get(key);
+                if (oldValue == null) {
+                    break; // removed meanwhile
+                }
             }
         }
     }
 
     /**
-     * Copy all of the mappings from the specified map to this one, replacing
+     * Copy all of the mappings in the specified map into this one, replacing
      * any mappings with the same keys.
      *
      * @param in the map whose mappings are to be copied
      */
     @Override
     public void putAll(Map<? extends K, ? extends V> in) {
-        if (fast) {
-            synchronized (this) {
-                Map<K, V> temp = cloneMap(map);
-                temp.putAll(in);
-                map = temp;
-            }
-        } else {
-            synchronized (map) {
-                map.putAll(in);
-            }
+        for (Map.Entry<? extends K, ? extends V> entry : in.entrySet()) {
+            put(entry.getKey(), entry.getValue());
         }
     }
 
@@ -302,18 +532,8 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      */
     @Override
     public V remove(Object key) {
-        if (fast) {
-            synchronized (this) {
-                Map<K, V> temp = cloneMap(map);
-                V result = temp.remove(key);
-                map = temp;
-                return (result);
-            }
-        } else {
-            synchronized (map) {
-                return (map.remove(key));
-            }
-        }
+        expungeStaleEntries();
+        return unmaskValue(map.remove(lookupKey(key)));
     }
 
     /**
@@ -321,20 +541,12 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      */
     @Override
     public void clear() {
-        if (fast) {
-            synchronized (this) {
-                map = createMap();
-            }
-        } else {
-            synchronized (map) {
-                map.clear();
-            }
+        map.clear();
+        while (queue.poll() != null) {
+            // drain
         }
     }
 
-    // Basic object methods
-    // ----------------------------------------------------------------------
-
     /**
      * Compare the specified object with this list for equality. This
      * implementation uses exactly the code that is used to define the
@@ -346,59 +558,28 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      */
     @Override
     public boolean equals(Object o) {
-        // Simple tests that require no synchronization
         if (o == this) {
             return (true);
         } else if (!(o instanceof Map)) {
             return (false);
         }
         Map<?, ?> mo = (Map<?, ?>) o;
+        if (mo.size() != size()) {
+            return (false);
+        }
 
-        // Compare the two maps for equality
-        if (fast) {
-            if (mo.size() != map.size()) {
-                return (false);
-            }
-            Iterator<?> i = map.entrySet().iterator();
-            while (i.hasNext()) {
-                Map.Entry<?, ?> e = (Map.Entry<?, ?>) i.next();
-                Object key = e.getKey();
-                Object value = e.getValue();
-                if (value == null) {
-                    if (!(mo.get(key) == null && mo.containsKey(key))) {
-                        return (false);
-                    }
-                } else {
-                    if (!value.equals(mo.get(key))) {
-                        return (false);
-                    }
-                }
-            }
-            return (true);
-
-        } else {
-            synchronized (map) {
-                if (mo.size() != map.size()) {
+        for (Map.Entry<K, V> e : entrySet()) {
+            Object key = e.getKey();
+            Object value = e.getValue();
+            if (value == null) {
+                if (!(mo.get(key) == null && mo.containsKey(key))) {
                     return (false);
                 }
-                Iterator<?> i = map.entrySet().iterator();
-                while (i.hasNext()) {
-                    Map.Entry<?, ?> e = (Map.Entry<?, ?>) i.next();
-                    Object key = e.getKey();
-                    Object value = e.getValue();
-                    if (value == null) {
-                        if (!(mo.get(key) == null && mo.containsKey(key))) {
-                            return (false);
-                        }
-                    } else {
-                        if (!value.equals(mo.get(key))) {
-                            return (false);
-                        }
-                    }
-                }
-                return (true);
+            } else if (!value.equals(mo.get(key))) {
+                return (false);
             }
         }
+        return (true);
     }
 
     /**
@@ -410,378 +591,358 @@ public class WeakFastHashMap<K, V> extends HashMap<K, V> {
      */
     @Override
     public int hashCode() {
-        if (fast) {
-            int h = 0;
-            Iterator<Map.Entry<K, V>> i = map.entrySet().iterator();
-            while (i.hasNext()) {
-                h += i.next().hashCode();
-            }
-            return (h);
-        } else {
-            synchronized (map) {
-                int h = 0;
-                Iterator<Map.Entry<K, V>> i = map.entrySet().iterator();
-                while (i.hasNext()) {
-                    h += i.next().hashCode();
-                }
-                return (h);
-            }
+        int h = 0;
+        for (Map.Entry<K, V> e : entrySet()) {
+            h += e.hashCode();
         }
+        return (h);
     }
 
     /**
-     * Return a shallow copy of this <code>FastHashMap</code> instance.
+     * Return a shallow copy of this <code>WeakFastHashMap</code> instance.
      * The keys and values themselves are not copied.
      *
      * @return a clone of this map
      */
     @Override
     public Object clone() {
-        WeakFastHashMap<K, V> results = null;
-        if (fast) {
-            results = new WeakFastHashMap<K, V>(map);
-        } else {
-            synchronized (map) {
-                results = new WeakFastHashMap<K, V>(map);
-            }
-        }
+        WeakFastHashMap<K, V> results = new WeakFastHashMap<K, V>(this);
         results.setFast(getFast());
         return (results);
     }
 
-    // Map views
-    // ----------------------------------------------------------------------
-
-    /**
-     * Return a collection view of the mappings contained in this map. Each
-     * element in the returned collection is a <code>Map.Entry</code>.
-     *
-     * @return the set of map Map entries
-     */
     @Override
-    public Set<Map.Entry<K, V>> entrySet() {
-        return new EntrySet();
+    public String toString() {
+        StringBuilder buffer = new StringBuilder("{");
+        for (Map.Entry<K, V> e : entrySet()) {
+            if (buffer.length() > 1) {
+                buffer.append(", ");
+            }
+            buffer.append(e.getKey() == this ? "(this Map)" : e.getKey());
+            buffer.append('=');
+            buffer.append(e.getValue() == this ? "(this Map)" : e.getValue());
+        }
+        return buffer.append('}').toString();
     }
 
-    /**
-     * Return a set view of the keys contained in this map.
-     *
-     * @return the set of the Map's keys
-     */
-    @Override
-    public Set<K> keySet() {
-        return new KeySet();
+    // Serialization: entries with reachable keys
+    // ----------------------------------------------------------------------
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (Map.Entry<K, V> e : entrySet()) {
+            out.writeBoolean(true);
+            out.writeObject(e.getKey());
+            out.writeObject(e.getValue());
+        }
+        out.writeBoolean(false);
     }
 
-    /**
-     * Return a collection view of the values contained in this map.
-     *
-     * @return the set of the Map's values
-     */
-    @Override
-    public Collection<V> values() {
-        return new Values();
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        map = new ConcurrentHashMap<Object, Object>();
+        queue = new ReferenceQueue<Object>();
+        while (in.readBoolean()) {
+            K key = (K) in.readObject();
+            V value = (V) in.readObject();
+            put(key, value);
+        }
     }
 
-    // Abstractions on Map creations (for subclasses such as WeakFastHashMap)
+    // Former hooks of the clone-on-write implementation
     // ----------------------------------------------------------------------
 
+    /**
+     * Not used: entries are held by a concurrent map.
+     *
+     * @return a new map
+     * @deprecated kept for source compatibility, never called
+     */
+    @Deprecated
     protected Map<K, V> createMap() {
-        return new WeakHashMap<K, V>();
+        return new HashMap<K, V>();
     }
 
+    /**
+     * Not used: entries are held by a concurrent map.
+     *
+     * @param capacity the initial capacity
+     * @return a new map
+     * @deprecated kept for source compatibility, never called
+     */
+    @Deprecated
     protected Map<K, V> createMap(int capacity) {
-        return new WeakHashMap<K, V>(capacity);
+        return new HashMap<K, V>(capacity);
     }
 
+    /**
+     * Not used: entries are held by a concurrent map.
+     *
+     * @param capacity the initial capacity
+     * @param factor the load factor
+     * @return a new map
+     * @deprecated kept for source compatibility, never called
+     */
+    @Deprecated
     protected Map<K, V> createMap(int capacity, float factor) {
-        return new WeakHashMap<K, V>(capacity, factor);
+        return new HashMap<K, V>(capacity, factor);
     }
 
+    /**
+     * Not used: entries are held by a concurrent map.
+     *
+     * @param map the mappings to copy
+     * @return a new map
+     * @deprecated kept for source compatibility, never called
+     */
+    @Deprecated
     protected Map<K, V> createMap(Map<K, V> map) {
-        return new WeakHashMap<K, V>(map);
+        return new HashMap<K, V>(map);
     }
 
+    /**
+     * Not used: entries are held by a concurrent map.
+     *
+     * @param map the mappings to copy
+     * @return a new map
+     * @deprecated kept for source compatibility, never called
+     */
+    @Deprecated
     protected Map<K, V> cloneMap(Map<K, V> map) {
         return createMap(map);
     }
 
-    // Map view inner classes
+    // Map views
     // ----------------------------------------------------------------------
 
     /**
-     * Abstract collection implementation shared by keySet(), values() and
-     * entrySet().
+     * Return a collection view of the mappings contained in this map. Each
+     * element in the returned collection is a <code>Map.Entry</code>.
+     *
+     * @return the set of the map entries
      */
-    private abstract class CollectionView<T> implements Collection<T> {
-
-        public CollectionView() {}
-
-        protected abstract Collection<T> get(Map<K, V> map);
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
 
-        protected abstract T iteratorNext(Map.Entry<K, V> entry);
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new ViewIterator<Map.Entry<K, V>>() {
 
-        public void clear() {
-            if (fast) {
-                synchronized (WeakFastHashMap.this) {
-                    map = createMap();
-                }
-            } else {
-                synchronized (map) {
-                    get(map).clear();
-                }
+                    @Override
+                    Map.Entry<K, V> next(K key, Object stored, V value) {
+                        return new Entry(key, stored, value);
+                    }
+                };
             }
-        }
 
-        public boolean remove(Object o) {
-            if (fast) {
-                synchronized (WeakFastHashMap.this) {
-                    Map<K, V> temp = cloneMap(map);
-                    boolean r = get(temp).remove(o);
-                    map = temp;
-                    return r;
-                }
-            } else {
-                synchronized (map) {
-                    return get(map).remove(o);
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
                 }
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                Object value = map.get(lookupKey(e.getKey()));
+                return (value != null) && maskValue(e.getValue()).equals(value);
             }
-        }
 
-        public boolean removeAll(Collection<?> o) {
-            if (fast) {
-                synchronized (WeakFastHashMap.this) {
-                    Map<K, V> temp = cloneMap(map);
-                    boolean r = get(temp).removeAll(o);
-                    map = temp;
-                    return r;
-                }
-            } else {
-                synchronized (map) {
-                    return get(map).removeAll(o);
+            @Override
+            public boolean remove(Object o) {
+                if (!contains(o)) {
+                    return false;
                 }
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return map.remove(lookupKey(e.getKey()), maskValue(e.getValue()));
             }
-        }
 
-        public boolean retainAll(Collection<?> o) {
-            if (fast) {
-                synchronized (WeakFastHashMap.this) {
-                    Map<K, V> temp = cloneMap(map);
-                    boolean r = get(temp).retainAll(o);
-                    map = temp;
-                    return r;
-                }
-            } else {
-                synchronized (map) {
-                    return get(map).retainAll(o);
-                }
+            @Override
+            public int size() {
+                return WeakFastHashMap.this.size();
             }
-        }
 
-        public int size() {
-            if (fast) {
-                return get(map).size();
-            } else {
-                synchronized (map) {
-                    return get(map).size();
-                }
+            @Override
+            public void clear() {
+                WeakFastHashMap.this.clear();
             }
-        }
+        };
+    }
 
-        public boolean isEmpty() {
-            if (fast) {
-                return get(map).isEmpty();
-            } else {
-                synchronized (map) {
-                    return get(map).isEmpty();
-                }
-            }
-        }
+    /**
+     * Return a set view of the keys contained in this map.
+     *
+     * @return the set of the Map's keys
+     */
+    @Override
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
 
-        public boolean contains(Object o) {
-            if (fast) {
-                return get(map).contains(o);
-            } else {
-                synchronized (map) {
-                    return get(map).contains(o);
-                }
-            }
-        }
+            @Override
+            public Iterator<K> iterator() {
+                return new ViewIterator<K>() {
 
-        public boolean containsAll(Collection<?> o) {
-            if (fast) {
-                return get(map).containsAll(o);
-            } else {
-                synchronized (map) {
-                    return get(map).containsAll(o);
-                }
+                    @Override
+                    K next(K key, Object stored, V value) {
+                        return key;
+                    }
+                };
             }
-        }
 
-        public <A> A[] toArray(A[] o) {
-            if (fast) {
-                return get(map).toArray(o);
-            } else {
-                synchronized (map) {
-                    return get(map).toArray(o);
-                }
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
             }
-        }
 
-        public Object[] toArray() {
-            if (fast) {
-                return get(map).toArray();
-            } else {
-                synchronized (map) {
-                    return get(map).toArray();
-                }
+            @Override
+            public boolean remove(Object o) {
+                return map.remove(lookupKey(o)) != null;
             }
-        }
 
-        @Override
-        public boolean equals(Object o) {
-            if (o == this) {
-                return true;
+            @Override
+            public int size() {
+                return WeakFastHashMap.this.size();
             }
-            if (fast) {
-                return get(map).equals(o);
-            } else {
-                synchronized (map) {
-                    return get(map).equals(o);
-                }
-            }
-        }
 
-        @Override
-        public int hashCode() {
-            if (fast) {
-                return get(map).hashCode();
-            } else {
-                synchronized (map) {
-                    return get(map).hashCode();
-                }
+            @Override
+            public void clear() {
+                WeakFastHashMap.this.clear();
             }
-        }
-
-        public boolean add(T o) {
-            throw new UnsupportedOperationException();
-        }
-
-        public boolean addAll(Collection<? extends T> c) {
-            throw new UnsupportedOperationException();
-        }
-
-        public Iterator<T> iterator() {
-            return new CollectionViewIterator();
-        }
+        };
+    }
 
-        private class CollectionViewIterator implements Iterator<T> {
+    /**
+     * Return a collection view of the values contained in this map.
+     *
+     * @return the set of the Map's values
+     */
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
 
-            private Map<K, V> expected;
-            private Map.Entry<K, V> lastReturned = null;
-            private Iterator<Map.Entry<K, V>> iterator;
+            @Override
+            public Iterator<V> iterator() {
+                return new ViewIterator<V>() {
 
-            public CollectionViewIterator() {
-                expected = map;
-                iterator = expected.entrySet().iterator();
+                    @Override
+                    V next(K key, Object stored, V value) {
+                        return value;
+                    }
+                };
             }
 
-            public boolean hasNext() {
-                if (expected != map) {
-                    throw new ConcurrentModificationException();
-                }
-                return iterator.hasNext();
+            @Override
+            public boolean contains(Object o) {
+                return containsValue(o);
             }
 
-            public T next() {
-                if (expected != map) {
-                    throw new ConcurrentModificationException();
-                }
-                lastReturned = iterator.next();
-                return iteratorNext(lastReturned);
+            @Override
+            public int size() {
+                return WeakFastHashMap.this.size();
             }
 
-            public void remove() {
-                if (lastReturned == null) {
-                    throw new IllegalStateException();
-                }
-                if (fast) {
-                    synchronized (WeakFastHashMap.this) {
-                        if (expected != map) {
-                            throw new ConcurrentModificationException();
-                        }
-                        WeakFastHashMap.this.remove(lastReturned.getKey());
-                        lastReturned = null;
-                        expected = map;
-                    }
-                } else {
-                    iterator.remove();
-                    lastReturned = null;
-                }
+            @Override
+            public void clear() {
+                WeakFastHashMap.this.clear();
             }
-        }
+        };
     }
 
     /**
-     * Set implementation over the keys of the FastHashMap
+     * Entry of a view, writing through the map.
      */
-    private class KeySet extends CollectionView<K> implements Set<K> {
+    class Entry implements Map.Entry<K, V> {
 
-        @Override
-        protected Collection<K> get(Map<K, V> map) {
-            return map.keySet();
-        }
+        final K key;
+        final Object stored;
+        V value;
 
-        @Override
-        protected K iteratorNext(Map.Entry<K, V> entry) {
-            return entry.getKey();
+        Entry(K key, Object stored, V value) {
+            this.key = key;
+            this.stored = stored;
+            this.value = value;
         }
 
-    }
+        public K getKey() {
+            return key;
+        }
 
-    /**
-     * Collection implementation over the values of the FastHashMap
-     */
-    private class Values extends CollectionView<V> {
+        public V getValue() {
+            return value;
+        }
 
-        @Override
-        protected Collection<V> get(Map<K, V> map) {
-            return map.values();
+        public V setValue(V newValue) {
+            V previous = value;
+            value = newValue;
+            map.replace(stored, maskValue(newValue));
+            return previous;
         }
 
         @Override
-        protected V iteratorNext(Map.Entry<K, V> entry) {
-            return entry.getValue();
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return (key == null ? e.getKey() == null : key.equals(e.getKey()))
+                    && (value == null ? e.getValue() == null : value.equals(e.getValue()));
         }
-    }
-
-    /**
-     * Set implementation over the entries of the FastHashMap
-     */
-    private class EntrySet extends CollectionView<Map.Entry<K, V>> implements Set<Map.Entry<K, V>> {
 
         @Override
-        protected Collection<Map.Entry<K, V>> get(Map<K, V> map) {
-            return map.entrySet();
+        public int hashCode() {
+            return ((key == null) ? 0 : key.hashCode()) ^ ((value == null) ? 0 : value.hashCode());
         }
 
         @Override
-        protected Map.Entry<K, V> iteratorNext(Map.Entry<K, V> entry) {
-            return entry;
+        public String toString() {
+            return key + "=" + value;
         }
-
     }
 
+    /**
+     * Iterator on live entries: the keys are strongly held while iterated.
+     */
+    abstract class ViewIterator<T> implements Iterator<T> {
+
+        final Iterator<Map.Entry<Object, Object>> entries = map.entrySet().iterator();
+        T next = null;
+        boolean hasNext = false;
+        Object nextStored = null;
+        Object lastStored = null;
+
+        abstract T next(K key, Object stored, V value);
+
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            while (!hasNext && entries.hasNext()) {
+                Map.Entry<Object, Object> e = entries.next();
+                Object stored = e.getKey();
+                Object key = unmaskKey(stored);
+                if (key != stored) { // not reclaimed
+                    next = next((K) key, stored, WeakFastHashMap.<V> unmaskValue(e.getValue()));
+                    hasNext = true;
+                    nextStored = stored;
+                }
+            }
+            return hasNext;
+        }
 
-    @Override
-    public String toString() {
-        if (fast) {
-            return (map.toString());
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = false;
+            lastStored = nextStored;
+            T result = next;
+            next = null;
+            return result;
         }
-        synchronized (map) {
-            return (map.toString());
+
+        public void remove() {
+            if (lastStored == null) {
+                throw new IllegalStateException();
+            }
+            map.remove(lastStored);
+            lastStored = null;
         }
     }
-
 }
-
@@ -7,7 +7,10 @@ package org.mypsycho.beans.converter;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -20,6 +23,7 @@ import java.util.List;
 public abstract class AbstractTypeConverter implements TypeConverter {
 
     List<Class<?>> supporteds;
+    Set<Class<?>> shareds = Collections.emptySet();
 
     protected AbstractTypeConverter(Class<?>... types) {
         supporteds = Arrays.asList(types);
@@ -29,6 +33,91 @@ public abstract class AbstractTypeConverter implements TypeConverter {
         return supporteds;
     }
 
+    /**
+     * Declare the types whose conversions are immutable and independent of context.
+     *
+     * @param types shared types
+     * @see #isShared(Class, String)
+     */
+    protected void setShared(Class<?>... types) {
+        shareds = new HashSet<Class<?>>(Arrays.asList(types));
+    }
+
+    /**
+     * Convert several definitions to the same type.
+     *
+     * @param expected expected type
+     * @param values definitions to convert
+     * @param context context of conversion
+     * @return converted values, in the order of definitions
+     * @throws IllegalArgumentException if a definition cannot be converted
+     */
+    public Object[] convertAll(Class<?> expected, String[] values, Object context)
+            throws IllegalArgumentException {
+        Object[] results = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            results[i] = convert(expected, values[i], context);
+        }
+        return results;
+    }
+
+    /**
+     * Convert several definitions to the same type with a converter.
+     * <p>
+     * Converters not extending this class convert definitions one by one.
+     * </p>
+     *
+     * @param converter converter of the values
+     * @param expected expected type
+     * @param values definitions to convert
+     * @param context context of conversion
+     * @return converted values, in the order of definitions
+     * @throws IllegalArgumentException if a definition cannot be converted
+     * @see #convertAll(Class, String[], Object)
+     */
+    public static Object[] convertAll(TypeConverter converter, Class<?> expected,
+            String[] values, Object context) throws IllegalArgumentException {
+        if (converter instanceof AbstractTypeConverter) {
+            return ((AbstractTypeConverter) converter).convertAll(expected, values, context);
+        }
+        Object[] results = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            results[i] = converter.convert(expected, values[i], context);
+        }
+        return results;
+    }
+
+    /**
+     * Indicates if the conversion of a value can be shared by all injections.
+     * <p>
+     * A shared result must be immutable and must not depend on the context.
+     * </p>
+     *
+     * @param expected expected type
+     * @param value definition to convert
+     * @return true if the result can be reused for the same type and definition
+     */
+    public boolean isShared(Class<?> expected, String value) {
+        return shareds.contains(expected);
+    }
+
+    /**
+     * Indicates if the conversion of a value by a converter can be shared.
+     * <p>
+     * Only converters extending this class can share their conversions.
+     * </p>
+     *
+     * @param converter converter of the value
+     * @param expected expected type
+     * @param value definition to convert
+     * @return true if the result can be reused for the same type and definition
+     * @see #isShared(Class, String)
+     */
+    public static boolean isShared(TypeConverter converter, Class<?> expected, String value) {
+        return (converter instanceof AbstractTypeConverter)
+                && ((AbstractTypeConverter) converter).isShared(expected, value);
+    }
+
     protected static <O> O reThrow(String message, Throwable cause) {
         while (cause instanceof InvocationTargetException) {
             cause = ((InvocationTargetException) cause).getTargetException();
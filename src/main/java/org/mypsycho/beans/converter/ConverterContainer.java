@@ -4,10 +4,15 @@
  */
 package org.mypsycho.beans.converter;
 
+import java.lang.ref.Reference;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.mypsycho.util.CachePolicy;
+import org.mypsycho.util.PolicyCache;
+import org.mypsycho.util.PolicyCacheMBean;
+
 
 /**
  * Class for ...
@@ -22,6 +27,92 @@ public class ConverterContainer extends ReflectConverter {
 
     TypeConverter defaultConverter;
 
+    // Shared conversions by type then definition, see AbstractTypeConverter#isShared
+    final SharedValues sharedValues = new SharedValues();
+
+    /**
+     * Shared values by type then definition.
+     * <p>
+     * Types are weakly referenced and values, which reference their type, softly.
+     * Statistics are the sums of the caches of the types.
+     * </p>
+     */
+    static final class SharedValues implements PolicyCacheMBean {
+
+        final PolicyCache<Class<?>, PolicyCache<String, Object>> types;
+
+        SharedValues() {
+            CachePolicy policy = new CachePolicy(0, CachePolicy.Strength.STRONG);
+            policy.setWeakKeys(true);
+            types = policy.<Class<?>, PolicyCache<String, Object>> createCache();
+        }
+
+        PolicyCache<String, Object> get(Class<?> type) {
+            PolicyCache<String, Object> values = types.get(type);
+            if (values == null) {
+                values = new CachePolicy(0, CachePolicy.Strength.SOFT)
+                        .<String, Object> createCache();
+                PolicyCache<String, Object> previous = types.putIfAbsent(type, values);
+                if (previous != null) {
+                    values = previous;
+                }
+            }
+            return values;
+        }
+
+        public int getSize() {
+            int size = 0;
+            for (PolicyCache<String, Object> values : types.values()) {
+                size += values.getSize();
+            }
+            return size;
+        }
+
+        public int getMaxEntries() {
+            return 0;
+        }
+
+        public String getValueStrength() {
+            return CachePolicy.Strength.SOFT.name();
+        }
+
+        public boolean isWeakKeys() {
+            return true;
+        }
+
+        public long getHits() {
+            long hits = 0;
+            for (PolicyCache<String, Object> values : types.values()) {
+                hits += values.getHits();
+            }
+            return hits;
+        }
+
+        public long getMisses() {
+            long misses = 0;
+            for (PolicyCache<String, Object> values : types.values()) {
+                misses += values.getMisses();
+            }
+            return misses;
+        }
+
+        public long getEvictions() {
+            return 0;
+        }
+
+        public long getCollected() {
+            long collected = types.getCollected();
+            for (PolicyCache<String, Object> values : types.values()) {
+                collected += values.getCollected();
+            }
+            return collected;
+        }
+
+        public void clear() {
+            types.clear();
+        }
+    }
+
     /**
      *
      */
@@ -47,6 +138,9 @@ public class ConverterContainer extends ReflectConverter {
             }
         }
         delegates.put(key, converter);
+        // previous resolutions and conversions may be obsolete
+        clearResolved();
+        sharedValues.clear();
 
         if ((key.getSuperclass() != null) && !Object.class.equals(key.getSuperclass())) {
             register(key.getSuperclass(), converter, false);
@@ -64,10 +158,76 @@ public class ConverterContainer extends ReflectConverter {
 
 
     @Override
-    public Object convert(Class<?> expected, String value, Object context) {
+    protected TypeConverter resolve(Class<?> expected) {
         TypeConverter converter = delegates.get(expected);
-        return (converter != null) ? converter.convert(expected, value, context) //
-                : super.convert(expected, value, context);
+        return (converter != null) ? converter : super.resolve(expected);
+    }
+
+    @Override
+    public boolean isShared(Class<?> expected, String value) {
+        return (value != null) && isShared(getConverter(expected), expected, value);
+    }
+
+    @Override
+    public Object convert(Class<?> expected, String value, Object context) {
+        return convert(getConverter(expected), expected, value, context);
+    }
+
+    /**
+     * Convert several definitions with the converter resolved once.
+     * <p>
+     * Shared values are shared as by {@link #convert(Class, String, Object)}.
+     * </p>
+     *
+     * @param expected expected type
+     * @param values definitions to convert
+     * @param context context of conversion
+     * @return converted values, in the order of definitions
+     */
+    @Override
+    public Object[] convertAll(Class<?> expected, String[] values, Object context) {
+        TypeConverter converter = getConverter(expected);
+        boolean shared = false;
+        for (int i = 0; (i < values.length) && !shared; i++) {
+            shared = (values[i] != null) && isShared(converter, expected, values[i]);
+        }
+        if (!shared) {
+            return convertAll(converter, expected, values, context);
+        }
+
+        Object[] results = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            results[i] = convert(converter, expected, values[i], context);
+        }
+        return results;
+    }
+
+    private Object convert(TypeConverter converter, Class<?> expected, String value,
+            Object context) {
+        if ((value == null) || !isShared(converter, expected, value)) {
+            return converter.convert(expected, value, context);
+        }
+
+        PolicyCache<String, Object> shareds = sharedValues.get(expected);
+        Object shared = shareds.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        shared = converter.convert(expected, value, context);
+        if ((shared == null) || (shared instanceof Reference)) {
+            return shared;
+        }
+        Object previous = shareds.putIfAbsent(value, shared);
+        return (previous != null) ? previous : shared;
+    }
+
+    /**
+     * Returns the statistics of the shared conversions.
+     *
+     * @return the cache statistics
+     */
+    public PolicyCacheMBean getSharedValues() {
+        return sharedValues;
     }
 
 }
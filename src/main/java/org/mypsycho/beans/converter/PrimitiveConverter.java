@@ -8,11 +8,6 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
 
 
 /**
@@ -25,44 +20,36 @@ import java.util.Set;
 public class PrimitiveConverter extends AbstractTypeConverter {
 
     protected static final String TYPE_FIELDNAME = "TYPE";
-    static final TypeConverter CHAR_CONVERTER = new TypeConverter() {
+    static final TypeConverter CHAR_CONVERTER = new AbstractTypeConverter(Character.class,
+            Character.TYPE) {
 
         Character defaultPrimitive = new Character((char) 0);
-        @SuppressWarnings("unchecked")
-        List<? extends Class<?>> classes = Arrays.asList(Character.class, Character.TYPE);
-
-        public Collection<? extends Class<?>> getSupported() {
-            return classes;
-        }
 
         public Object convert(Class<?> expected, String value, Object context)
                 throws IllegalArgumentException {
-            if ((value == null) || (value.length() == 0)) {
+            if (value == null) {
                 return expected.isPrimitive() ? defaultPrimitive : null;
             }
 
-            if (value.length() > 0) {
-                value = value.trim();
-                if (value.length() > 0) {
-                    throw new IllegalArgumentException("Illegal character '" + value + "'");
-                }
+            String trimmed = value.trim();
+            if (trimmed.length() != 1) {
+                throw new IllegalArgumentException("Illegal character '" + value + "'");
             }
-            return value.charAt(0);
+            return Character.valueOf(trimmed.charAt(0)); // cached for ASCII
         }
     };
 
-    static final TypeConverter STRING_CONVERTER = new TypeConverter() {
-
-        Set<? extends Class<?>> classes = Collections.singleton(String.class);
-
-        public Collection<? extends Class<?>> getSupported() {
-            return classes;
-        }
+    static final TypeConverter STRING_CONVERTER = new AbstractTypeConverter(String.class) {
 
         public Object convert(Class<?> expected, String value, Object context)
                 throws IllegalArgumentException {
             return value;
         }
+
+        @Override
+        public Object[] convertAll(Class<?> expected, String[] values, Object context) {
+            return values.clone();
+        }
     };
 
     static final TypeConverter[] PRIMITIVE_CONVERTERS = {
@@ -95,12 +82,96 @@ public class PrimitiveConverter extends AbstractTypeConverter {
         }
     }
 
+    /**
+     * Parsers called without reflection.
+     */
+    enum Parser {
+        BOOLEAN(Boolean.class, "valueOf") {
+
+            @Override
+            Object parse(String value) {
+                return Boolean.valueOf(value); // constants
+            }
+        },
+        SHORT(Short.class, "valueOf") {
+
+            @Override
+            Object parse(String value) {
+                return Short.valueOf(value);
+            }
+        },
+        INTEGER(Integer.class, "decode") {
+
+            @Override
+            Object parse(String value) {
+                return Integer.decode(value);
+            }
+        },
+        INTEGER_VALUE(Integer.class, "valueOf") {
+
+            @Override
+            Object parse(String value) {
+                return Integer.valueOf(value);
+            }
+        },
+        LONG(Long.class, "decode") {
+
+            @Override
+            Object parse(String value) {
+                return Long.decode(value);
+            }
+        },
+        LONG_VALUE(Long.class, "valueOf") {
+
+            @Override
+            Object parse(String value) {
+                return Long.valueOf(value);
+            }
+        },
+        FLOAT(Float.class, "valueOf") {
+
+            @Override
+            Object parse(String value) {
+                return Float.valueOf(value);
+            }
+        },
+        DOUBLE(Double.class, "valueOf") {
+
+            @Override
+            Object parse(String value) {
+                return Double.valueOf(value);
+            }
+        };
+
+        final Class<?> type;
+        final String method;
+
+        Parser(Class<?> t, String m) {
+            type = t;
+            method = m;
+        }
+
+        abstract Object parse(String value);
+
+        static Parser find(Class<?> type, String method) {
+            for (Parser parser : values()) {
+                if (parser.type.equals(type) && parser.method.equals(method)) {
+                    return parser;
+                }
+            }
+            return null;
+        }
+    }
+
     final Object defaultPrimitive;
     final Method parser;
+    // null when the parser is only known by reflection
+    final Parser direct;
 
     public PrimitiveConverter(Class<?> type, String method, Object byDefault) {
         super(type, getType(type));
         defaultPrimitive = byDefault;
+        direct = Parser.find(type, method);
         try {
             parser = type.getDeclaredMethod(method, String.class);
             if (!Modifier.isStatic(parser.getModifiers())
@@ -127,6 +198,13 @@ public class PrimitiveConverter extends AbstractTypeConverter {
         if (value == null) {
             return expected.isPrimitive() ? defaultPrimitive : null;
         }
+        if (direct != null) {
+            try {
+                return direct.parse(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
         try {
             return parser.invoke(null, value);
         } catch (IllegalAccessException e) {
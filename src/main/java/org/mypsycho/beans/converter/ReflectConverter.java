@@ -7,6 +7,11 @@ package org.mypsycho.beans.converter;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mypsycho.util.CachePolicy;
+import org.mypsycho.util.PolicyCache;
 
 
 /**
@@ -23,66 +28,85 @@ public class ReflectConverter extends AbstractTypeConverter {
 
     TypeConverter collectionsConverter = new CollectionConverter();
 
+    // Converter resolved for each expected type, cleared on registration:
+    // types are weakly referenced and converters, which reference their type, softly
+    final PolicyCache<Class<?>, TypeConverter> resolveds = createResolvedCache();
+
     public ReflectConverter(Class<?>... types) {
         super(Object.class);
     }
 
+    static PolicyCache<Class<?>, TypeConverter> createResolvedCache() {
+        CachePolicy policy = new CachePolicy(0, CachePolicy.Strength.SOFT);
+        policy.setWeakKeys(true);
+        return policy.<Class<?>, TypeConverter> createCache();
+    }
+
 
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public Object convert(Class<?> expected, String value, Object context)
             throws IllegalArgumentException {
-        if (expected.isArray()) {
-            try {
-                return Array.newInstance(expected.getComponentType(), Integer.valueOf(value));
-            } catch (NegativeArraySizeException e) {
-                reThrow("Impossible to create array with size " + value, null);
-            } catch (NumberFormatException e) {
-                reThrow("Impossible to create array with size " + value, null);
+        return getConverter(expected).convert(expected, value, context);
+    }
+
+    /**
+     * Returns the converter used for a type.
+     * <p>
+     * The converter is resolved once per type, so conversions do not discover
+     * constructors or enumeration constants again.
+     * </p>
+     *
+     * @param expected expected type
+     * @return the converter
+     */
+    public TypeConverter getConverter(Class<?> expected) {
+        TypeConverter converter = resolveds.get(expected);
+        if (converter == null) {
+            converter = resolve(expected);
+            TypeConverter previous = resolveds.putIfAbsent(expected, converter);
+            if (previous != null) {
+                converter = previous;
             }
         }
+        return converter;
+    }
+
+    /**
+     * Forget the resolved converters.
+     */
+    protected void clearResolved() {
+        resolveds.clear();
+    }
+
+    /**
+     * Resolve the converter of a type.
+     *
+     * @param expected expected type
+     * @return the converter
+     */
+    protected TypeConverter resolve(Class<?> expected) {
+        if (expected.isArray()) {
+            return new ArrayConverter(expected);
+        }
 
         if (expected.isEnum()) {
-            try {
-                return Enum.valueOf((Class) expected, value);
-            } catch (NegativeArraySizeException e) {
-                reThrow("Impossible to create array with size " + value, null);
-            } catch (NumberFormatException e) {
-                reThrow("Impossible to create array with size " + value, null);
-            }
+            return new EnumConverter(expected);
         }
 
         if (collectionsConverter.getSupported().contains(expected)) {
-            return collectionsConverter.convert(expected, value, context);
+            return collectionsConverter;
         }
 
         if (Object.class.equals(expected)) {
-            return value;
+            return PrimitiveConverter.STRING_CONVERTER;
         }
 
         if (expected.isInterface()) {
-            rethrow(expected, " is an interface", null);
+            return new InvalidConverter(expected, " is an interface", null);
         }
 
-        try {
-            if (value == null) {
-                return expected.newInstance();
-            }
-
-            Constructor<?> constructor = expected.getConstructor(STRING_ARGS);
-            return constructor.newInstance(value);
-
-        } catch (NoSuchMethodException e) { // fall back to constructor with string ?
-            rethrow(expected, "No constructor for", e);
-        } catch (InstantiationException e) {
-            rethrow(expected, "Impossible to instantiate", e);
-        } catch (IllegalAccessException e) {
-            rethrow(expected, "Cannot access", e);
-        } catch (InvocationTargetException e) {
-            rethrow(expected, "Impossible to instantiate", e.getCause());
-        }
-        return null; // Impossible : always rethrow before
+        return new ConstructorConverter(expected);
     }
 
     protected void rethrow(Class<?> expected, String message, Throwable cause) {
@@ -92,4 +116,102 @@ public class ReflectConverter extends AbstractTypeConverter {
         reThrow(message, cause);
     }
 
+    class ArrayConverter extends AbstractTypeConverter {
+
+        ArrayConverter(Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        public Object convert(Class<?> expected, String value, Object context) {
+            try {
+                return Array.newInstance(expected.getComponentType(), Integer.valueOf(value));
+            } catch (NegativeArraySizeException e) {
+                return reThrow("Impossible to create array with size " + value, null);
+            } catch (NumberFormatException e) {
+                return reThrow("Impossible to create array with size " + value, null);
+            }
+        }
+    }
+
+    class EnumConverter extends AbstractTypeConverter {
+
+        final Map<String, Object> constants = new HashMap<String, Object>();
+
+        EnumConverter(Class<?> type) {
+            super(type);
+            for (Object constant : type.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name(), constant);
+            }
+        }
+
+        @Override
+        public Object convert(Class<?> expected, String value, Object context) {
+            Object constant = constants.get(value);
+            if (constant == null) {
+                throw new IllegalArgumentException("No enum constant "
+                        + expected.getCanonicalName() + "." + value);
+            }
+            return constant;
+        }
+    }
+
+    class InvalidConverter extends AbstractTypeConverter {
+
+        final String message;
+        final Throwable cause;
+
+        InvalidConverter(Class<?> type, String message, Throwable cause) {
+            super(type);
+            this.message = message;
+            this.cause = cause;
+        }
+
+        @Override
+        public Object convert(Class<?> expected, String value, Object context) {
+            rethrow(expected, message, cause);
+            return null; // Impossible : always rethrow before
+        }
+    }
+
+    class ConstructorConverter extends AbstractTypeConverter {
+
+        final Constructor<?> constructor;
+        final NoSuchMethodException missing;
+
+        ConstructorConverter(Class<?> type) {
+            super(type);
+            Constructor<?> found = null;
+            NoSuchMethodException failure = null;
+            try {
+                found = type.getConstructor(STRING_ARGS);
+            } catch (NoSuchMethodException e) {
+                failure = e;
+            }
+            constructor = found;
+            missing = failure;
+        }
+
+        @Override
+        public Object convert(Class<?> expected, String value, Object context) {
+            try {
+                if (value == null) {
+                    return expected.newInstance();
+                }
+                if (constructor == null) { // fall back to constructor with string ?
+                    rethrow(expected, "No constructor for", missing);
+                }
+                return constructor.newInstance(value);
+
+            } catch (InstantiationException e) {
+                rethrow(expected, "Impossible to instantiate", e);
+            } catch (IllegalAccessException e) {
+                rethrow(expected, "Cannot access", e);
+            } catch (InvocationTargetException e) {
+                rethrow(expected, "Impossible to instantiate", e.getCause());
+            }
+            return null; // Impossible : always rethrow before
+        }
+    }
+
 }
@@ -10,6 +10,7 @@ import java.awt.event.ContainerEvent;
 import java.awt.event.ContainerListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -45,6 +46,10 @@ public abstract class ContainerPropagator {
 
     final List<String> expectedProps;
 
+    boolean batched = false;
+    // Added components waiting for componentsAdded, null outside a batch
+    List<Component> pendings = null;
+
     public ContainerPropagator(String... expecteds) {
         this(null, expecteds);
     }
@@ -193,6 +198,21 @@ public abstract class ContainerPropagator {
         componentUpdated(target);
     }
 
+    /**
+     * Called once a tree of components has been added in batched mode.
+     * <p>
+     * Components are listed in the order of {@link #componentAdded(Component)}
+     * calls: children before their parent.
+     * </p>
+     *
+     * @param targets added components
+     */
+    protected void componentsAdded(List<Component> targets) {
+        for (Component target : targets) {
+            componentAdded(target);
+        }
+    }
+
     /**
      * Can be called several times on the same component without clearComponent.
      *
@@ -200,6 +220,28 @@ public abstract class ContainerPropagator {
      */
     protected void componentUpdated(Component target) {}
 
+    /**
+     * Returns true if added components are notified once the whole tree is added.
+     *
+     * @return the batched
+     */
+    public boolean isBatched() {
+        return batched;
+    }
+
+    /**
+     * Sets if added components are notified once the whole tree is added.
+     * <p>
+     * In batched mode, {@link #componentAdded(Component)} calls are replaced by a
+     * single call of {@link #componentsAdded(List)} for each added tree.
+     * </p>
+     *
+     * @param batched the batched to set
+     */
+    public void setBatched(boolean batched) {
+        this.batched = batched;
+    }
+
     /**
      * This method is called when a component is removed.
      * <p>
@@ -219,7 +261,11 @@ public abstract class ContainerPropagator {
                     p.componentAdding(target);
                     
                 } else {
-                    p.componentAdded(target);
+                    if (p.pendings != null) {
+                        p.pendings.add(target);
+                    } else {
+                        p.componentAdded(target);
+                    }
                     if (!p.expectedProps.isEmpty()) {
                         target.addPropertyChangeListener(p.propertyListener);
                     }
@@ -257,6 +303,23 @@ public abstract class ContainerPropagator {
 
 
     private void activate(Event act, Component target) {
+        if ((act != Event.ADD) || !batched || (pendings != null)) {
+            propagate(act, target);
+            return;
+        }
+
+        List<Component> added = new ArrayList<Component>();
+        pendings = added;
+        try {
+            propagate(act, target);
+        } finally {
+            pendings = null;
+        }
+        // Components added by notification are handled in a new batch
+        componentsAdded(added);
+    }
+
+    private void propagate(Event act, Component target) {
         act.run(this, target, true);
 
         if (target instanceof Container) {
@@ -268,7 +331,7 @@ public abstract class ContainerPropagator {
             }
             // Propagate the
             for (int iComp = 0; iComp < cont.getComponentCount(); iComp++) {
-                activate(act, cont.getComponent(iComp));
+                propagate(act, cont.getComponent(iComp));
             }
         }
 
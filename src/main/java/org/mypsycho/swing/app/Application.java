@@ -13,6 +13,8 @@ import java.awt.Toolkit;
 import java.beans.Beans;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EventObject;
 import java.util.List;
 import java.util.Locale;
@@ -169,6 +171,8 @@ public abstract class Application extends SwingBean implements Injectable, Local
 
             @Override
             public void run(Application app, EventObject e) throws Exception {
+                app.getContext().getResourceManager().precompileLater(app.getPrecompiledTypes(),
+                        app.getLocale());
                 app.initialize(app.arguments);
             }
         },
@@ -526,6 +530,21 @@ public abstract class Application extends SwingBean implements Injectable, Local
     protected void initialize(String[] args) {
     }
 
+    /**
+     * Returns the classes whose resources are compiled in background during launch.
+     * <p>
+     * Compilation starts before {@code initialize}, windows and actions
+     * returned here are shown without loading their resources on the event
+     * dispatching thread.
+     * By default, no class is compiled in advance.
+     * </p>
+     *
+     * @return the classes to compile
+     */
+    protected Collection<Class<?>> getPrecompiledTypes() {
+        return Collections.emptyList();
+    }
+
     /**
      * Responsible for starting the application; for creating and showing
      * the initial GUI.
@@ -9,11 +9,18 @@ import java.awt.Container;
 import java.awt.IllegalComponentStateException;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import javax.swing.JComponent;
 import javax.swing.RootPaneContainer;
 
+import org.mypsycho.beans.InjectDescriptor;
 import org.mypsycho.swing.ContainerPropagator;
 import org.mypsycho.swing.app.utils.SwingHelper;
 
@@ -43,10 +50,14 @@ public class ComponentManager extends ContainerPropagator {
 
     PropertyChangeListener localeListener;
 
+    // Managed components, only used on the event dispatching thread
+    final Map<Component, Boolean> manageds = new WeakHashMap<Component, Boolean>();
+
     public ComponentManager(ApplicationContext parent) {
         // We do not rely on build listener,
         // we do not want the update to be popagated to children
         context = parent;
+        setBatched(true);
         localeListener = new PropertyChangeListener() {
             @Override
             public void propertyChange(PropertyChangeEvent evt) {
@@ -122,6 +133,27 @@ public class ComponentManager extends ContainerPropagator {
         }
 
         target.addPropertyChangeListener(Locales.LOCALE_PROP, localeListener);
+        manageds.put(target, Boolean.TRUE);
+    }
+
+    /**
+     * Injects again the managed components of some classes.
+     * <p>
+     * Must be called on the event dispatching thread.
+     * </p>
+     *
+     * @param types classes of the components to inject
+     */
+    public void reinject(Set<Class<?>> types) {
+        List<Component> targets = new ArrayList<Component>();
+        for (Component target : manageds.keySet()) {
+            if ((target != null) && types.contains(target.getClass())) {
+                targets.add(target);
+            }
+        }
+        for (Component target : targets) {
+            context.getResourceManager().inject(target, target.getLocale());
+        }
     }
 
     /*
@@ -131,8 +163,32 @@ public class ComponentManager extends ContainerPropagator {
      */
     @Override
     protected void componentAdded(Component target) {
-
         context.getResourceManager().inject(target, target.getLocale());
+        componentInjected(target);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.psycho.swing.ContainerPropagator#componentsAdded(java.util.List)
+     */
+    @Override
+    protected void componentsAdded(List<Component> targets) {
+        // Same order as componentAdded, descriptors are shared while the locale is
+        Map<Class<?>, InjectDescriptor> batch = new HashMap<Class<?>, InjectDescriptor>();
+        Locale batchLocale = null;
+        for (Component target : targets) {
+            Locale locale = target.getLocale();
+            if (!locale.equals(batchLocale)) {
+                batch.clear();
+                batchLocale = locale;
+            }
+            context.getResourceManager().injectBatched(batch, target, locale);
+            componentInjected(target);
+        }
+    }
+
+    void componentInjected(Component target) {
         if (target instanceof ApplicationComponent) {
             ((ApplicationComponent) target).register(getApplication());
         }
@@ -150,5 +206,6 @@ public class ComponentManager extends ContainerPropagator {
     @Override
     protected void componentRemoving(Component target) {
         target.removePropertyChangeListener(Locales.LOCALE_PROP, localeListener);
+        manageds.remove(target);
     }
 }
@@ -6,10 +6,23 @@ package org.mypsycho.swing.app;
 
 import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 
 import org.apache.commons.beanutils.NestedNullException;
 import org.mypsycho.beans.DescriptorExtension;
@@ -55,6 +68,11 @@ public class ResourceManager extends Injector {
     };
 
     final ApplicationContext context;
+
+    // Milliseconds before an idle precompiling thread ends
+    static final long PRECOMPILER_KEEP_ALIVE = 5000L;
+
+    private ExecutorService precompiler = null;
     
     public ResourceManager(ApplicationContext parent) {
 
@@ -100,6 +118,133 @@ public class ResourceManager extends Injector {
         register(defaultListener);
     }
 
+    /**
+     * Compile the injection descriptors of classes in background.
+     * <p>
+     * Descriptors are compiled concurrently by daemon threads, so views can be
+     * shown without loading their resources on the event dispatching thread.
+     * </p>
+     *
+     * @param types classes to compile
+     * @param locale locale of the descriptors
+     * @return the compilation tasks, one by class
+     * @see Injector#precompile(Iterable, Locale)
+     */
+    public List<Future<?>> precompileLater(Collection<? extends Class<?>> types,
+            final Locale locale) {
+        List<Future<?>> tasks = new ArrayList<Future<?>>(types.size());
+        if (types.isEmpty()) {
+            return tasks;
+        }
+        ExecutorService executor = getPrecompiler();
+        for (final Class<?> type : types) {
+            tasks.add(executor.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    precompile(Collections.<Class<?>> singletonList(type), locale);
+                }
+            }));
+        }
+        return tasks;
+    }
+
+    /**
+     * Prepare the injection of beans in background.
+     * <p>
+     * Bundles are loaded and definitions independent of the beans state are
+     * converted out of the event dispatching thread. The following injection on
+     * the event dispatching thread only calls the setters of beans.
+     * </p>
+     *
+     * @param beans beans to prepare
+     * @param locale locale of the beans
+     * @return the preparation task
+     * @see Injector#prepare(Iterable, Locale)
+     */
+    public Future<?> prepareLater(final List<?> beans, final Locale locale) {
+        return getPrecompiler().submit(new Runnable() {
+
+            @Override
+            public void run() {
+                prepare(beans, locale);
+            }
+        });
+    }
+
+    /**
+     * Inject beans on the event dispatching thread once prepared in background.
+     * <p>
+     * Beans are injected in a single event, in the list order.
+     * </p>
+     *
+     * @param beans beans to inject
+     * @param locale locale of the beans
+     * @return the task, done once beans are injected
+     */
+    public <T> Future<List<T>> injectLater(final List<T> beans, final Locale locale) {
+        final FutureTask<List<T>> apply = new FutureTask<List<T>>(new Runnable() {
+
+            @Override
+            public void run() {
+                injectAll(beans, locale);
+            }
+        }, beans);
+
+        getPrecompiler().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    prepare(beans, locale);
+                } finally {
+                    SwingUtilities.invokeLater(apply);
+                }
+            }
+        });
+        return apply;
+    }
+
+    /**
+     * Injects again the managed components of classes with modified bundles.
+     *
+     * @param types classes whose bundles are modified
+     * @see ComponentManager#reinject(Set)
+     */
+    @Override
+    protected void descriptorsInvalidated(final Set<Class<?>> types) {
+        SwingUtilities.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                getContext().getComponentManager().reinject(types);
+            }
+        });
+    }
+
+    private synchronized ExecutorService getPrecompiler() {
+        if (precompiler == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            ThreadFactory factory = new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ResourceManager-precompile");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            };
+            // Idle threads end, so a discarded instance does not keep its pool alive
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                    PRECOMPILER_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    factory);
+            pool.allowCoreThreadTimeOut(true);
+            precompiler = pool;
+        }
+        return precompiler;
+    }
+
     /*
      * (non-Javadoc)
      *
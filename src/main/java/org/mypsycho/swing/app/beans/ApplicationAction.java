@@ -574,7 +574,8 @@ public class ApplicationAction extends AbstractTypedAction implements Injectable
     <T> T getProperty(String method, String name) {
         if (method != null) {
             try {
-                return (T) getInvoker().getProperty(actionBean, method);
+                ResourceManager invoker = getInvoker();
+                return (T) invoker.getProperty(actionBean, invoker.getPropertyPath(method));
             } catch (Exception e) {
                 throw newInvokeException(method, e); // error ?
             }
@@ -586,7 +587,8 @@ public class ApplicationAction extends AbstractTypedAction implements Injectable
     <T> void setProperty(String method, boolean proxy, String name, Object value) {
         if (proxy && (method != null)) {
             try {
-                getInvoker().setProperty(actionBean, method, value);
+                ResourceManager invoker = getInvoker();
+                invoker.setProperty(actionBean, invoker.getPropertyPath(method), value);
             } catch (Exception e) {
                 throw newInvokeException(method, e);
             }
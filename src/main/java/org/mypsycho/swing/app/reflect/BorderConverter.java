@@ -7,7 +7,10 @@ package org.mypsycho.swing.app.reflect;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.BorderFactory;
 import javax.swing.border.Border;
@@ -28,11 +31,40 @@ import org.mypsycho.beans.converter.TypeConverter;
  */
 public class BorderConverter extends AbstractTypeConverter {
 
+    // Factories of immutable borders: titled borders can be modified
+    static final Set<String> SHARED_FACTORIES = new HashSet<String>(Arrays.asList("empty",
+            "line", "bevel", "loweredBevel", "raisedBevel", "etched", "compound"));
+
     TypeConverter delegate;
 
     public BorderConverter(TypeConverter d) {
         super(Border.class);
         delegate = d;
+        setShared(Border.class);
+    }
+
+    @Override
+    public boolean isShared(Class<?> expected, String value) {
+        if (!super.isShared(expected, value)) {
+            return false;
+        }
+        try {
+            List<String> call = decode(value);
+            if (!SHARED_FACTORIES.contains(call.get(0))) {
+                return false;
+            }
+            // Arguments must be shared too: colors, nested borders
+            Class<?>[] argTypes = findCreateMethod(call).getParameterTypes();
+            for (int i = 0; i < argTypes.length; i++) {
+                if (!argTypes[i].isPrimitive()
+                        && !isShared(delegate, argTypes[i], call.get(i + 1))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false; // notified on conversion
+        }
     }
 
     @Override
@@ -27,6 +27,13 @@ public class DerivedFontConverter extends AbstractTypeConverter {
     
     public DerivedFontConverter() {
         super(Font.class);
+        setShared(Font.class);
+    }
+
+    @Override
+    public boolean isShared(Class<?> expected, String value) {
+        // Derived fonts depend on the injected component
+        return super.isShared(expected, value) && !DERIVED_FONTS.contains(decode(value)[0]);
     }
 
 
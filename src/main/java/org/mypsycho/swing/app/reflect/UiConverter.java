@@ -32,6 +32,8 @@ public class UiConverter extends AbstractTypeConverter {
     public UiConverter() {
         super(Dimension.class, Rectangle.class, Point.class, // math
                 Font.class, Color.class, KeyStroke.class);
+        // Dimension, Rectangle and Point are mutable
+        setShared(Font.class, Color.class, KeyStroke.class);
     }
 
 
@@ -11,17 +11,26 @@ import java.text.Format;
 import java.text.MessageFormat;
 import java.text.ParsePosition;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.beanutils.NestedNullException;
-import org.apache.commons.beanutils.PropertyUtils;
+import org.mypsycho.beans.PropertyPath;
+import org.mypsycho.beans.PropertyUtilsBean;
+import org.mypsycho.beans.WeakFastHashMap;
 
 
 /**
  * A message format which handles property navigation.
+ * <p>
+ * Property paths are parsed once and their accessors are resolved once per
+ * class. Buffers are reused between calls: like MessageFormat, an instance must
+ * not be used by several threads at the same time.
+ * </p>
  *
  * @author Peransin Nicolas
  */
@@ -35,6 +44,17 @@ public class BeanMessageFormat extends java.text.Format {
 
     static final Pattern indexPattern = Pattern.compile("(\\d+)(\\.(.*))?");
 
+    // Shared accessors, descriptors are cached by class
+    static final PropertyUtilsBean PROPERTIES = new PropertyUtilsBean();
+
+    // Whether arguments are mapped with parsed paths, by class of format
+    static final Map<Class<?>, Boolean> PARSED_MAPPINGS = new WeakFastHashMap<Class<?>, Boolean>();
+
+    // Reused between calls
+    private transient Object[] mappeds = null;
+    private transient StringBuffer buffer = null;
+    private transient FieldPosition position = null;
+
     /**
      * The root is used as foctory for inner format.
      */
@@ -270,14 +290,75 @@ public class BeanMessageFormat extends java.text.Format {
     @Override
     public StringBuffer format(Object obj, StringBuffer toAppendTo, FieldPosition pos) {
         Object[] values = (Object[]) obj;
-        Object[] mappeds = new Object[maps.size()];
+        Object[] arguments = mappeds;
+        if ((arguments == null) || (arguments.length != maps.size())) {
+            arguments = new Object[maps.size()];
+        }
+        mappeds = null; // not shared by a reentrant call
+
+        try {
+            for (int iMap = 0; iMap < arguments.length; iMap++) {
+                ArgumentMap map = maps.get(iMap);
+                arguments[iMap] = (map.index < values.length) ? map.map(values[map.index]) : null;
+            }
+            return inner.format(arguments, toAppendTo, pos);
+        } finally {
+            Arrays.fill(arguments, null); // do not retain the values
+            mappeds = arguments;
+        }
+    }
+
+    /**
+     * Formats values and appends the text to a builder.
+     * <p>
+     * Unlike {@link #format(Object)}, buffers are reused between calls.
+     * </p>
+     *
+     * @param values values to format
+     * @param toAppendTo where text is appended
+     * @return the builder
+     */
+    public StringBuilder format(Object[] values, StringBuilder toAppendTo) {
+        StringBuffer text = buffer;
+        FieldPosition pos = position;
+        buffer = null; // not shared by a reentrant call
+        if (text == null) {
+            text = new StringBuffer();
+            pos = new FieldPosition(0);
+        }
 
-        for (int iMap = 0; iMap < mappeds.length; iMap++) {
-            ArgumentMap map = maps.get(iMap);
-            mappeds[iMap] = (map.index < values.length) ? map.map(values[map.index]) : null;
+        try {
+            format(values, text, pos);
+            return toAppendTo.append(text);
+        } finally {
+            text.setLength(0);
+            buffer = text;
+            position = pos;
+        }
+    }
+
+    /**
+     * Formats values, buffers are reused between calls.
+     *
+     * @param values values to format
+     * @return the text
+     */
+    public String formatText(Object... values) {
+        StringBuffer text = buffer;
+        FieldPosition pos = position;
+        buffer = null; // not shared by a reentrant call
+        if (text == null) {
+            text = new StringBuffer();
+            pos = new FieldPosition(0);
         }
 
-        return inner.format(mappeds, toAppendTo, pos);
+        try {
+            return format(values, text, pos).toString();
+        } finally {
+            text.setLength(0);
+            buffer = text;
+            position = pos;
+        }
     }
 
     /*
@@ -313,6 +394,8 @@ public class BeanMessageFormat extends java.text.Format {
 
         protected String path = null;
 
+        private PropertyPath parsed = null;
+
         protected ArgumentMap(int i, String expr) {
             index = i;
             path = expr;
@@ -327,17 +410,70 @@ public class BeanMessageFormat extends java.text.Format {
                 return null;
             }
 
-            return BeanMessageFormat.this.root.map(object, path);
+            BeanMessageFormat factory = BeanMessageFormat.this.root;
+            if (parsed == null) {
+                if (!factory.isParsedMapping()) {
+                    return factory.map(object, path);
+                }
+                parsed = factory.getPropertyUtils().getPropertyPath(path);
+            }
+            return factory.map(object, parsed);
         }
 
     }
     
     /**
-     * Interpret the property path of the object.
+     * Returns whether arguments are mapped by {@link #map(Object, PropertyPath)}.
      * <p>
-     * The default implementation use 
-     * {@link org.apache.commons.beanutils.PropertyUtils}
-     * </p>.
+     * A subclass overriding {@link #map(Object, String)} but not the parsed
+     * overload keeps receiving the paths as text.
+     * </p>
+     *
+     * @return true if paths are parsed once
+     */
+    boolean isParsedMapping() {
+        Class<?> type = getClass();
+        Boolean parsedMapping = PARSED_MAPPINGS.get(type);
+        if (parsedMapping == null) {
+            parsedMapping = isParsedMapping(type);
+            PARSED_MAPPINGS.put(type, parsedMapping);
+        }
+        return parsedMapping;
+    }
+
+    static boolean isParsedMapping(Class<?> type) {
+        // The most specific override decides
+        for (Class<?> c = type; !BeanMessageFormat.class.equals(c); c = c.getSuperclass()) {
+            if (declaresMap(c, PropertyPath.class)) {
+                return true;
+            }
+            if (declaresMap(c, String.class)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean declaresMap(Class<?> type, Class<?> pathType) {
+        try {
+            type.getDeclaredMethod("map", Object.class, pathType);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the accessors of properties.
+     *
+     * @return the property utilities
+     */
+    protected PropertyUtilsBean getPropertyUtils() {
+        return PROPERTIES;
+    }
+
+    /**
+     * Interpret the property path of the object.
      *
      * @param bean 
      * @param path
@@ -345,8 +481,23 @@ public class BeanMessageFormat extends java.text.Format {
      * @throws IllegalArgumentException if the value cannot be interpreted
      */
     protected Object map(Object bean, String path) throws IllegalArgumentException {
+        return map(bean, getPropertyUtils().getPropertyPath(path));
+    }
+
+    /**
+     * Interpret the parsed property path of the object.
+     * <p>
+     * The default implementation use {@link #getPropertyUtils()}.
+     * </p>
+     *
+     * @param bean 
+     * @param path
+     * @return property value
+     * @throws IllegalArgumentException if the value cannot be interpreted
+     */
+    protected Object map(Object bean, PropertyPath path) throws IllegalArgumentException {
         try {
-            return PropertyUtils.getProperty(bean, path);
+            return getPropertyUtils().getProperty(bean, path);
         } catch (NestedNullException e) {
             return null;
         } catch (IllegalAccessException e) {
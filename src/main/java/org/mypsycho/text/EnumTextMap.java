@@ -5,6 +5,7 @@
 package org.mypsycho.text;
 
 import java.awt.Component;
+import java.text.Format;
 import java.text.MessageFormat;
 import java.util.Locale;
 
@@ -80,18 +81,24 @@ public class EnumTextMap extends TextMap {
     @Override
     public String get(Object key, Object... args) {
         if (key instanceof Enum) {
-            return new EnumMessage((Enum<?>) key, getLocale()) {
-                private static final long serialVersionUID = EnumTextMap.serialVersionUID;
-
-                protected MessageFormat createFormat(String pattern) {
-                    // Should/could use ExtendedMessageFormat from commons.apache.org
-                    return (MessageFormat) EnumTextMap.this.createFormat(pattern);
-                }
-            }.format(args);
+            return formatWith(key, args);
         }
-        
         return super.get(key, args);
     }
-    
-    
+
+    @Override
+    Format compile(Object id, Locale locale) {
+        if (!(id instanceof Enum)) {
+            return super.compile(id, locale);
+        }
+        return new EnumMessage((Enum<?>) id, locale) {
+
+            private static final long serialVersionUID = EnumTextMap.serialVersionUID;
+
+            protected MessageFormat createFormat(String pattern) {
+                // Should/could use ExtendedMessageFormat from commons.apache.org
+                return (MessageFormat) EnumTextMap.this.createFormat(pattern);
+            }
+        };
+    }
 }
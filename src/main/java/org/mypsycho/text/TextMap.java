@@ -10,6 +10,10 @@ import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
 
 
@@ -21,6 +25,11 @@ import java.util.Locale;
  * <p>
  * The object can delegate the choice of localisation to initial context.
  * </p>
+ * <p>
+ * Compiled formats are reused by locale and pattern. As formats are not thread
+ * safe, a format is used by a single thread at a time: concurrent calls compile
+ * their own format, later reused.
+ * </p>
  *
  * @author Peransin Nicolas
  */
@@ -63,6 +72,9 @@ public class TextMap extends HashMap<String, String> {
     final Localized source;
     Locale locale = null;
     EnumPrefix prefix = EnumPrefix.none;
+
+    // Idle compiled formats by locale then by pattern or message id
+    private transient volatile ConcurrentMap<Locale, ConcurrentMap<Object, Queue<Format>>> formats;
     
     
     public TextMap(final Component src) {
@@ -122,7 +134,82 @@ public class TextMap extends HashMap<String, String> {
 
     
     protected String format(String format, Object[] args) {
-        return createFormat(format).format(args);
+        return formatWith(format, args);
+    }
+
+    /**
+     * Formats the arguments with a compiled format of a message.
+     *
+     * @param id pattern or message id
+     * @param args arguments of the message
+     * @return the formatted text
+     */
+    String formatWith(Object id, Object[] args) {
+        Locale current = getLocale();
+        Queue<Format> idles = (current != null) ? getIdles(current, id) : null;
+        Format compiled = (idles != null) ? idles.poll() : null;
+        if (compiled == null) {
+            compiled = compile(id, current);
+        }
+        try {
+            if (compiled instanceof BeanMessageFormat) { // buffers are reused
+                return ((BeanMessageFormat) compiled).formatText(args);
+            }
+            return compiled.format(args);
+        } finally {
+            if (idles != null) {
+                idles.offer(compiled);
+            }
+        }
+    }
+
+    /**
+     * Compiles the format of a message.
+     *
+     * @param id pattern or message id
+     * @param locale locale of the format
+     * @return the format
+     */
+    Format compile(Object id, Locale locale) {
+        return createFormat((String) id);
+    }
+
+    Queue<Format> getIdles(Locale locale, Object id) {
+        ConcurrentMap<Locale, ConcurrentMap<Object, Queue<Format>>> all = formats;
+        if (all == null) {
+            synchronized (this) {
+                all = formats;
+                if (all == null) {
+                    all = new ConcurrentHashMap<Locale, ConcurrentMap<Object, Queue<Format>>>(4);
+                    formats = all;
+                }
+            }
+        }
+
+        ConcurrentMap<Object, Queue<Format>> byId = all.get(locale);
+        if (byId == null) {
+            byId = new ConcurrentHashMap<Object, Queue<Format>>();
+            ConcurrentMap<Object, Queue<Format>> previous = all.putIfAbsent(locale, byId);
+            if (previous != null) {
+                byId = previous;
+            }
+        }
+
+        Queue<Format> idles = byId.get(id);
+        if (idles == null) {
+            idles = new ConcurrentLinkedQueue<Format>();
+            Queue<Format> previous = byId.putIfAbsent(id, idles);
+            if (previous != null) {
+                idles = previous;
+            }
+        }
+        return idles;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        formats = null;
     }
     
     /**
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 Peransin Nicolas.
+ * Use is subject to license terms.
+ */
+package org.mypsycho.util;
+
+
+/**
+ * Configuration of a {@link PolicyCache}.
+ * <p>
+ * A policy bounds the number of entries, least recently used entries being
+ * evicted first, and defines how values are referenced.
+ * Soft or weak values let the garbage collector reclaim entries, and the
+ * classes they describe, on long running sessions.
+ * </p>
+ * <p>
+ * Weak keys do not retain the keys of entries: caches keyed by classes do not
+ * prevent their unloading, as long as values do not strongly reference the key.
+ * </p>
+ *
+ * @author Peransin Nicolas
+ */
+public class CachePolicy {
+
+    /** Reference kind of cached values. */
+    public enum Strength {
+        STRONG, SOFT, WEAK
+    }
+
+    int maxEntries = 0;
+    Strength values = Strength.STRONG;
+    boolean weakKeys = false;
+
+    /**
+     * Constructor of an unbounded policy with strong values.
+     */
+    public CachePolicy() {
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries maximum count of entries, 0 or less for unbounded
+     * @param values reference kind of values
+     */
+    public CachePolicy(int maxEntries, Strength values) {
+        setMaxEntries(maxEntries);
+        setValues(values);
+    }
+
+    /**
+     * Returns the maximum count of entries.
+     *
+     * @return the maxEntries, 0 for unbounded
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum count of entries.
+     *
+     * @param maxEntries the maxEntries to set, 0 or less for unbounded
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(0, maxEntries);
+    }
+
+    /**
+     * Returns the reference kind of values.
+     *
+     * @return the values
+     */
+    public Strength getValues() {
+        return values;
+    }
+
+    /**
+     * Sets the reference kind of values.
+     *
+     * @param values the values to set
+     */
+    public void setValues(Strength values) {
+        if (values == null) {
+            throw new NullPointerException("values");
+        }
+        this.values = values;
+    }
+
+    /**
+     * Returns whether keys are weakly referenced.
+     *
+     * @return true if keys are weak
+     */
+    public boolean isWeakKeys() {
+        return weakKeys;
+    }
+
+    /**
+     * Sets whether keys are weakly referenced.
+     * <p>
+     * Weak keys are compared with <code>equals</code> like strong ones.
+     * </p>
+     *
+     * @param weakKeys true for weak keys
+     */
+    public void setWeakKeys(boolean weakKeys) {
+        this.weakKeys = weakKeys;
+    }
+
+    /**
+     * Create a cache applying this policy.
+     * <p>
+     * The cache does not follow later modifications of the policy.
+     * </p>
+     *
+     * @return a new cache
+     */
+    public <K, V> PolicyCache<K, V> createCache() {
+        return new PolicyCache<K, V>(this);
+    }
+
+    @Override
+    public String toString() {
+        return ((maxEntries > 0) ? "max=" + maxEntries : "unbounded") + "," + values
+                + (weakKeys ? ",weak keys" : "");
+    }
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright (C) 2011 Peransin Nicolas.
+ * Use is subject to license terms.
+ */
+package org.mypsycho.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Thread safe cache applying a {@link CachePolicy}.
+ * <p>
+ * Unbounded caches are backed by a concurrent map and lookups are not locked.
+ * Bounded caches are backed by access ordered maps, the least recently used
+ * entry is evicted when the maximum count is reached. Large bounded caches are
+ * split in segments locked separately, each one evicting its own least recently
+ * used entry.
+ * </p>
+ * <p>
+ * Entries whose soft or weak value has been reclaimed are removed on the next
+ * access: their keys are not retained. In the same way, entries whose weak key
+ * has been reclaimed are removed.
+ * </p>
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ * @author Peransin Nicolas
+ */
+public class PolicyCache<K, V> implements PolicyCacheMBean {
+
+    interface KeyedReference {
+
+        Object getKey();
+    }
+
+    static class SoftValue<V> extends SoftReference<V> implements KeyedReference {
+
+        final Object key;
+
+        SoftValue(Object key, V value, ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+    }
+
+    static class WeakValue<V> extends WeakReference<V> implements KeyedReference {
+
+        final Object key;
+
+        WeakValue(Object key, V value, ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * Stored key: a weak reference which hash and equality are the ones of the referent.
+     */
+    static final class WeakKey extends WeakReference<Object> {
+
+        final int hash;
+
+        WeakKey(Object key, ReferenceQueue<Object> queue) {
+            super(key, queue);
+            hash = key.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            Object referent = get();
+            if ((referent == null) || !(o instanceof WeakKey)) {
+                return false; // reclaimed keys only match themselves
+            }
+            Object other = ((WeakKey) o).get();
+            return (referent == other) || referent.equals(other);
+        }
+    }
+
+    /**
+     * Key used to search a weak key, reused by each thread.
+     */
+    static final class LookupKey {
+
+        // Null when not in use
+        Object key;
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WeakKey)) {
+                return false;
+            }
+            Object referent = ((WeakKey) o).get();
+            return (referent == key) || key.equals(referent);
+        }
+    }
+
+    static final ThreadLocal<LookupKey> LOOKUPS = new ThreadLocal<LookupKey>() {
+
+        @Override
+        protected LookupKey initialValue() {
+            return new LookupKey();
+        }
+    };
+
+    // Bounded caches are split while each segment keeps this count of entries
+    static final int SEGMENT_ENTRIES = 64;
+    static final int MAX_SEGMENTS = 16;
+
+    final int maxEntries;
+    final CachePolicy.Strength strength;
+    final boolean weakKeys;
+
+    // Keys are stored as is or in a WeakKey,
+    // values are stored as is or in a reference depending on strength
+    final Map<Object, Object>[] segments;
+    final ReferenceQueue<V> queue = new ReferenceQueue<V>();
+    final ReferenceQueue<Object> keyQueue = new ReferenceQueue<Object>();
+
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    final AtomicLong evictions = new AtomicLong();
+    final AtomicLong collected = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param policy policy to apply
+     */
+    @SuppressWarnings("unchecked")
+    public PolicyCache(CachePolicy policy) {
+        maxEntries = policy.getMaxEntries();
+        strength = policy.getValues();
+        weakKeys = policy.isWeakKeys();
+
+        if (maxEntries > 0) {
+            int count = 1;
+            while ((count < MAX_SEGMENTS) && (maxEntries / (2 * count) >= SEGMENT_ENTRIES)) {
+                count *= 2;
+            }
+            segments = new Map[count];
+            for (int i = 0; i < count; i++) {
+                int bound = maxEntries / count + ((i < maxEntries % count) ? 1 : 0);
+                segments[i] = createSegment(bound);
+            }
+        } else {
+            segments = new Map[] { new ConcurrentHashMap<Object, Object>() };
+        }
+    }
+
+    Map<Object, Object> createSegment(final int bound) {
+        return new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                if (size() <= bound) {
+                    return false;
+                }
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    boolean isBounded() {
+        return maxEntries > 0;
+    }
+
+    Map<Object, Object> segmentFor(Object key) {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (segments.length - 1)];
+    }
+
+    Object store(K key) {
+        return weakKeys ? new WeakKey(key, keyQueue) : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    K unwrapKey(Object stored) {
+        return (K) (weakKeys ? ((WeakKey) stored).get() : stored);
+    }
+
+    Object wrap(Object key, V value) {
+        switch (strength) {
+        case SOFT:
+            return new SoftValue<V>(key, value, queue);
+        case WEAK:
+            return new WeakValue<V>(key, value, queue);
+        default:
+            return value;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    V unwrap(Object stored) {
+        if ((stored == null) || (strength == CachePolicy.Strength.STRONG)) {
+            return (V) stored;
+        }
+        return ((Reference<V>) stored).get();
+    }
+
+    /**
+     * Remove the entries whose value or key has been reclaimed.
+     */
+    void purge() {
+        if (strength != CachePolicy.Strength.STRONG) {
+            for (Reference<?> ref = queue.poll(); ref != null; ref = queue.poll()) {
+                Object key = ((KeyedReference) ref).getKey();
+                Map<Object, Object> segment = segmentFor(key);
+                boolean removed;
+                if (isBounded()) {
+                    synchronized (segment) {
+                        removed = (segment.get(key) == ref) && (segment.remove(key) != null);
+                    }
+                } else {
+                    removed = ((ConcurrentMap<Object, Object>) segment).remove(key, ref);
+                }
+                if (removed) {
+                    collected.incrementAndGet();
+                }
+            }
+        }
+        if (weakKeys) {
+            for (Reference<?> key = keyQueue.poll(); key != null; key = keyQueue.poll()) {
+                // a reclaimed key only matches itself
+                if (access(segmentFor(key), key, true) != null) {
+                    collected.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get or remove the stored value of a key as stored.
+     */
+    Object access(Map<Object, Object> segment, Object key, boolean remove) {
+        if (isBounded()) {
+            synchronized (segment) {
+                return remove ? segment.remove(key) : segment.get(key);
+            }
+        }
+        return remove ? segment.remove(key) : segment.get(key);
+    }
+
+    /**
+     * Get or remove the stored value of a key, without allocation for weak keys.
+     */
+    Object access(K key, boolean remove) {
+        Map<Object, Object> segment = segmentFor(key);
+        if (!weakKeys) {
+            return access(segment, key, remove);
+        }
+
+        LookupKey lookup = LOOKUPS.get();
+        if (lookup.key != null) { // lookup from the equals method of a key
+            lookup = new LookupKey();
+        }
+        lookup.key = key;
+        try {
+            return access(segment, lookup, remove);
+        } finally {
+            lookup.key = null;
+        }
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key key of the value
+     * @return the value or null if absent
+     */
+    public V get(K key) {
+        purge();
+        V value = unwrap(access(key, false));
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Associate a value to a key.
+     *
+     * @param key key of the value
+     * @param value value to cache, not null
+     * @return the previous value or null
+     */
+    public V put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        purge();
+        Object storedKey = store(key);
+        Object stored = wrap(storedKey, value);
+        Map<Object, Object> segment = segmentFor(storedKey);
+        if (isBounded()) {
+            synchronized (segment) {
+                return unwrap(segment.put(storedKey, stored));
+            }
+        }
+        return unwrap(segment.put(storedKey, stored));
+    }
+
+    /**
+     * Associate a value to a key if no value is cached.
+     *
+     * @param key key of the value
+     * @param value value to cache, not null
+     * @return the cached value, null if the provided value has been cached
+     */
+    public V putIfAbsent(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        purge();
+        Object storedKey = store(key);
+        Object stored = wrap(storedKey, value);
+        Map<Object, Object> segment = segmentFor(storedKey);
+        if (isBounded()) {
+            synchronized (segment) {
+                V previous = unwrap(segment.get(storedKey));
+                if (previous == null) {
+                    segment.put(storedKey, stored);
+                }
+                return previous;
+            }
+        }
+
+        ConcurrentMap<Object, Object> map = (ConcurrentMap<Object, Object>) segment;
+        while (true) {
+            Object current = map.putIfAbsent(storedKey, stored);
+            if (current == null) {
+                return null;
+            }
+            V previous = unwrap(current);
+            if (previous != null) {
+                return previous;
+            }
+            // reclaimed but not purged yet
+            if (map.replace(storedKey, current, stored)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Remove the value of a key.
+     *
+     * @param key key of the value
+     * @return the removed value or null
+     */
+    public V remove(K key) {
+        return unwrap(access(key, true));
+    }
+
+    /**
+     * Returns a snapshot of the keys.
+     * <p>
+     * The value of a returned key may have been reclaimed.
+     * </p>
+     *
+     * @return the keys
+     */
+    public List<K> keys() {
+        purge();
+        List<K> keys = new ArrayList<K>();
+        for (Map<Object, Object> segment : segments) {
+            if (isBounded()) {
+                synchronized (segment) {
+                    addKeys(segment, keys);
+                }
+            } else {
+                addKeys(segment, keys);
+            }
+        }
+        return keys;
+    }
+
+    private void addKeys(Map<Object, Object> segment, List<K> keys) {
+        for (Object stored : segment.keySet()) {
+            K key = unwrapKey(stored);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cached values.
+     *
+     * @return the values
+     */
+    public List<V> values() {
+        purge();
+        List<V> values = new ArrayList<V>();
+        for (Map<Object, Object> segment : segments) {
+            if (isBounded()) {
+                synchronized (segment) {
+                    addValues(segment, values);
+                }
+            } else {
+                addValues(segment, values);
+            }
+        }
+        return values;
+    }
+
+    private void addValues(Map<Object, Object> segment, List<V> values) {
+        for (Object stored : segment.values()) {
+            V value = unwrap(stored);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Map<Object, Object> segment : segments) {
+            if (isBounded()) {
+                synchronized (segment) {
+                    segment.clear();
+                }
+            } else {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public int getSize() {
+        purge();
+        int size = 0;
+        for (Map<Object, Object> segment : segments) {
+            if (isBounded()) {
+                synchronized (segment) {
+                    size += segment.size();
+                }
+            } else {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public String getValueStrength() {
+        return strength.name();
+    }
+
+    @Override
+    public boolean isWeakKeys() {
+        return weakKeys;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getCollected() {
+        return collected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PolicyCache[size=" + getSize() + ",max=" + maxEntries + "," + strength
+                + (weakKeys ? ",weak keys" : "")
+                + ",hits=" + hits + ",misses=" + misses + ",evictions=" + evictions
+                + ",collected=" + collected + "]";
+    }
+}
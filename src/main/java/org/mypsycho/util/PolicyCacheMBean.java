@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2011 Peransin Nicolas.
+ * Use is subject to license terms.
+ */
+package org.mypsycho.util;
+
+
+/**
+ * Statistics of a {@link PolicyCache}.
+ * <p>
+ * This interface follows the standard MBean naming, a cache can be registered
+ * as is in a MBean server.
+ * </p>
+ *
+ * @author Peransin Nicolas
+ */
+public interface PolicyCacheMBean {
+
+    /** @return the current count of entries */
+    int getSize();
+
+    /** @return the maximum count of entries, 0 for unbounded */
+    int getMaxEntries();
+
+    /** @return the reference kind of values */
+    String getValueStrength();
+
+    /** @return true if keys are weakly referenced */
+    boolean isWeakKeys();
+
+    /** @return the count of lookups returning a value */
+    long getHits();
+
+    /** @return the count of lookups without value */
+    long getMisses();
+
+    /** @return the count of entries removed to respect the maximum count */
+    long getEvictions();
+
+    /** @return the count of entries whose key or value was reclaimed by the garbage collector */
+    long getCollected();
+
+    /** Remove all entries. */
+    void clear();
+}
@@ -4,10 +4,24 @@
  */
 package org.mypsycho.util;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -15,9 +29,18 @@ import java.util.MissingResourceException;
 import java.util.Properties;
 import java.util.ResourceBundle;
 import java.util.Set;
-
-import org.apache.commons.collections.FastHashMap;
-import org.mypsycho.beans.WeakFastHashMap;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 
@@ -35,11 +58,86 @@ public class PropertiesLoader {
     public static final char MEMBER_TOKEN = '#';
     public static final char FALLBACK_TOKEN = '?';
 
+    /** Suffix of the compiled bundles, after the bundle name. */
+    public static final String COMPILED_SUFFIX = ".bundle";
+    static final int COMPILED_MAGIC = 0x50424e44; // PBND
+    static final int COMPILED_VERSION = 1;
+    // Bound of strings in compiled bundles, larger lengths are corrupted
+    static final int COMPILED_MAX_STRING = 1 << 24;
+
     public interface LoadingListener {
 
         void handle(Object event, String detail, Throwable t);
     }
 
+    /**
+     * Listener of the .properties files modified while watching.
+     */
+    public interface ReloadListener {
+
+        /**
+         * Notify modified .properties files.
+         * <p>
+         * Called by the watching thread, once the definitions are invalidated.
+         * </p>
+         *
+         * @param basenames names of the classes or files whose definitions changed
+         */
+        void bundlesChanged(Set<String> basenames);
+    }
+
+    /**
+     * .properties file read while watching.
+     */
+    static final class WatchedFile {
+
+        final File file;
+        final String basename;
+        // Layers reading the file, a file is shared by locales
+        final Set<String> layerKeys =
+                Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        volatile long lastModified;
+
+        WatchedFile(File file, String basename) {
+            this.file = file;
+            this.basename = basename;
+            lastModified = file.lastModified();
+        }
+    }
+
+    /**
+     * Stack of references being resolved.
+     * <p>
+     * Membership is checked in constant time, so resolving a bundle is linear
+     * in the count of references, cycles included. Only addLast and removeLast
+     * are expected.
+     * </p>
+     */
+    static final class ReferenceStack extends ArrayDeque<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        final Set<String> members = new HashSet<String>();
+
+        @Override
+        public void addLast(String key) {
+            super.addLast(key);
+            members.add(key);
+        }
+
+        @Override
+        public String removeLast() {
+            String key = super.removeLast();
+            members.remove(key);
+            return key;
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            return members.contains(key);
+        }
+    }
+
     protected String createKey(String basename, Locale locale) {
         return "file:/" + basename + "?" + locale;
     }
@@ -49,9 +147,88 @@ public class PropertiesLoader {
     }
 
 
+    /**
+     * Definitions of a .properties file, shared by the bundles of its subclasses.
+     * <p>
+     * A definition without reference is stored as a String, as it is already
+     * resolved, other definitions as a String[].
+     * </p>
+     */
+    static final class Layer {
+
+        static final Layer EMPTY = new Layer(new HashMap<String, Object>());
+
+        final Map<String, Object> definitions;
+
+        Layer(Map<String, Object> definitions) {
+            this.definitions = definitions;
+        }
+
+        static Object toDefinition(String value) {
+            return (value.indexOf(SUBST_TOKEN) == -1) ? value : new String[] { value };
+        }
+    }
+
+    /**
+     * Names of the definitions read by a bundle.
+     * <p>
+     * Targets are the references of the bundles used by resolved values, they
+     * are followed when the names are collected. Identity is used for equality.
+     * </p>
+     */
+    static final class References {
+
+        final Set<String> basenames = newConcurrentSet();
+
+        final Set<References> targets = newConcurrentSet();
+
+        References(String basename) {
+            basenames.add(basename);
+        }
+
+        void collect(Set<String> names) {
+            Set<References> visited = new HashSet<References>();
+            Deque<References> pending = new ArrayDeque<References>();
+            pending.add(this);
+            while (!pending.isEmpty()) {
+                References current = pending.removeFirst();
+                if (visited.add(current)) {
+                    names.addAll(current.basenames);
+                    pending.addAll(current.targets);
+                }
+            }
+        }
+
+        static <T> Set<T> newConcurrentSet() {
+            return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+        }
+    }
+
+    /**
+     * Properties of a class or a file.
+     * <p>
+     * The definitions of a class bundle are the layers of its hierarchy, from the
+     * class to its top superclass, shared with the other bundles. Only the
+     * values with references are resolved per bundle, as the references depend on
+     * the class.
+     * </p>
+     * <p>
+     * A definition is replaced by its resolved value on first access. As the
+     * value only depends on the definitions, threads resolving the same key
+     * publish the same value without locking.
+     * </p>
+     */
     protected class Bundle implements Map<String, String> {
 
-        private FastHashMap map = new FastHashMap();
+        private final Layer[] layers;
+
+        // Names read by this bundle, including the referenced bundles
+        final References references;
+
+        // Resolved values of definitions with references
+        private final ConcurrentMap<String, String> values = new ConcurrentHashMap<String, String>();
+
+        private volatile boolean resolved = false;
 
         private Locale locale;
 
@@ -60,9 +237,15 @@ public class PropertiesLoader {
         private ClassLoader context;
 
         Bundle(String name, Locale l, ClassLoader loader) {
+            this(name, l, loader, new Layer[] { new Layer(new HashMap<String, Object>()) });
+        }
+
+        Bundle(String name, Locale l, ClassLoader loader, Layer[] definitions) {
             locale = l;
             basename = name;
             context = loader;
+            layers = definitions;
+            references = new References(name);
         }
 
         /**
@@ -93,15 +276,20 @@ public class PropertiesLoader {
         }
 
         public int size() {
-            return map.size();
+            return (layers.length == 1) ? layers[0].definitions.size() : keySet().size();
         }
 
         public boolean isEmpty() {
-            return map.isEmpty();
+            for (Layer layer : layers) {
+                if (!layer.definitions.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         public boolean containsKey(Object key) {
-            return map.containsKey(key);
+            return getDefinition(key) != null;
         }
 
         public boolean containsValue(Object value) {
@@ -109,7 +297,7 @@ public class PropertiesLoader {
         }
 
         public String get(Object key) {
-            Object o = map.get(key);
+            Object o = getDefinition(key);
             if (o == null) {
                 return null;
             }
@@ -120,23 +308,48 @@ public class PropertiesLoader {
                 return null;
             }
 
-            return resolveProperty(this, (String) key, new LinkedList<String>());
+            return resolveProperty(this, (String) key, new ReferenceStack());
         }
 
+        /**
+         * Returns the resolved value or the definition of a key.
+         *
+         * @param key key of the property
+         * @return a String if resolved, a String[] for a definition, or null
+         */
         Object getDefinition(Object key) {
-            return map.get(key);
+            if (key == null) {
+                return null;
+            }
+            Object value = values.get(key);
+            if (value != null) {
+                return value;
+            }
+            for (Layer layer : layers) {
+                value = layer.definitions.get(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
         }
 
         String putValue(String key, String value) {
-            map.put(key, value);
+            values.put(key, value);
             return null;
         }
 
+        // Only while creating the bundle
         String putDefinition(String key, String value) {
-            map.put(key, new String[] { value });
+            layers[0].definitions.put(key, Layer.toDefinition(value));
             return null;
         }
 
+        // Only while creating the bundle, for a definition without reference
+        void putResolvedDefinition(String key, String value) {
+            layers[0].definitions.put(key, value);
+        }
+
         public String put(String key, String value) {
             throw new UnsupportedOperationException();
         }
@@ -153,38 +366,103 @@ public class PropertiesLoader {
             throw new UnsupportedOperationException();
         }
 
-        @SuppressWarnings("unchecked")
         public Set<String> keySet() {
-            return map.keySet();
+            if (layers.length == 1) {
+                return Collections.unmodifiableSet(layers[0].definitions.keySet());
+            }
+            Set<String> keys = new HashSet<String>();
+            for (Layer layer : layers) {
+                keys.addAll(layer.definitions.keySet());
+            }
+            return Collections.unmodifiableSet(keys);
         }
 
-        @SuppressWarnings("unchecked")
         public Collection<String> values() {
-            resolve();
-            return map.values();
+            return toMap().values();
         }
 
-        @SuppressWarnings("unchecked")
         public Set<java.util.Map.Entry<String, String>> entrySet() {
+            return toMap().entrySet();
+        }
+
+        Map<String, String> toMap() {
             resolve();
-            return map.entrySet();
+            Map<String, String> all = new HashMap<String, String>();
+            for (String key : keySet()) {
+                all.put(key, get(key));
+            }
+            return Collections.unmodifiableMap(all);
+        }
+
+        /**
+         * Returns whether all the definitions are resolved.
+         *
+         * @return true if resolved
+         */
+        public boolean isResolved() {
+            return resolved;
         }
 
-        @SuppressWarnings("unchecked")
         void resolve() {
-            if (map.getFast()) { // already resolved
+            if (resolved) {
                 return;
             }
-            // Copy is required as the map is updated
-            for (Object key : new HashSet<Object>(map.keySet())) {
-                get(key); // resolve
+            // Indexed copy, shared by the resolving threads
+            final List<Object> keys = new ArrayList<Object>(keySet());
+            int chunks = getParallelChunks(keys.size());
+            if (chunks <= 1) {
+                for (Object key : keys) {
+                    get(key); // resolve
+                }
+            } else {
+                resolveInParallel(keys, chunks);
+            }
+            resolved = true;
+        }
+
+        /**
+         * Resolve keys by chunks shared by the current thread and the resolvers.
+         * <p>
+         * The current thread takes chunks too: it never waits for a resolver
+         * which has not started.
+         * </p>
+         */
+        void resolveInParallel(final List<Object> keys, final int chunks) {
+            final AtomicInteger next = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(chunks);
+            Runnable worker = new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int chunk = next.getAndIncrement(); chunk < chunks; //
+                    chunk = next.getAndIncrement()) {
+                        try {
+                            int end = Math.min(keys.size(), (chunk + 1) * keys.size() / chunks);
+                            for (int i = chunk * keys.size() / chunks; i < end; i++) {
+                                get(keys.get(i)); // resolve
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }
+            };
+
+            ExecutorService executor = getResolvers();
+            for (int i = 1; i < chunks; i++) {
+                executor.execute(worker);
+            }
+            worker.run();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            map.setFast(true);
         }
 
         @Override
         public String toString() {
-            return map.toString();
+            return toMap().toString();
         }
     }
 
@@ -192,19 +470,58 @@ public class PropertiesLoader {
         return null;
     }
 
-    Map<String, Bundle> cache; // Weak references
+    volatile PolicyCache<String, Bundle> cache;
+
+    // Definitions by class, shared by the bundles of the subclasses
+    volatile PolicyCache<String, Layer> layers;
 
     private static final ResourceBundle.Control RES_CONTROL =
             ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_PROPERTIES);
 
+    // Without cache, watched files are read again
+    private static final ResourceBundle.Control WATCH_CONTROL = new ResourceBundle.Control() {
+
+        @Override
+        public List<String> getFormats(String baseName) {
+            return FORMAT_PROPERTIES;
+        }
+
+        @Override
+        public Locale getFallbackLocale(String baseName, Locale locale) {
+            return null;
+        }
+
+        @Override
+        public long getTimeToLive(String baseName, Locale locale) {
+            return TTL_DONT_CACHE;
+        }
+    };
+
     LoadingListener listener = null;
 
+    final List<ReloadListener> reloadListeners = new CopyOnWriteArrayList<ReloadListener>();
+
+    // Polling period in milliseconds, 0 when not watching
+    volatile long watchPeriod = 0;
+    private Timer watcher = null;
+    final ConcurrentMap<File, WatchedFile> watcheds = new ConcurrentHashMap<File, WatchedFile>();
+
+    // Minimum count of keys per parallel chunk, 0 for serial resolution
+    int parallelThreshold = 256;
+
+    // Milliseconds before an idle resolver thread ends
+    static final long RESOLVER_KEEP_ALIVE = 5000L;
+
+    private ExecutorService resolvers = null;
+
     Properties env = null;
 
-    public PropertiesLoader() {
-        cache = new WeakFastHashMap<String, Bundle>();
-        ((WeakFastHashMap<?, ?>) cache).setFast(true);
+    boolean compiledBundles = false;
 
+    boolean lazyResolution = false;
+
+    public PropertiesLoader() {
+        setCachePolicy(new CachePolicy(0, CachePolicy.Strength.SOFT));
     }
 
     public PropertiesLoader(String prefix, Properties globals) {
@@ -216,6 +533,288 @@ public class PropertiesLoader {
         this("", globals);
     }
 
+    /**
+     * Sets the policy of the bundle cache.
+     * <p>
+     * Loaded bundles are lost.
+     * </p>
+     *
+     * @param policy the policy to apply
+     */
+    public void setCachePolicy(CachePolicy policy) {
+        layers = policy.<String, Layer> createCache();
+        cache = policy.<String, Bundle> createCache();
+    }
+
+    /**
+     * Returns the statistics of the bundle cache.
+     *
+     * @return the cache statistics
+     */
+    public PolicyCacheMBean getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the statistics of the cache of definitions by class.
+     * <p>
+     * Definitions of a class are shared by the bundles of its subclasses.
+     * </p>
+     *
+     * @return the cache statistics
+     */
+    public PolicyCacheMBean getLayers() {
+        return layers;
+    }
+
+    /**
+     * Returns the minimum count of keys resolved by a thread.
+     *
+     * @return the threshold, 0 if bundles are resolved by a single thread
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the minimum count of keys resolved by a thread.
+     * <p>
+     * Large bundles are resolved by several threads: keys are independent once
+     * their references are resolved.
+     * </p>
+     *
+     * @param threshold the threshold, 0 or less to resolve bundles by a single thread
+     */
+    public void setParallelThreshold(int threshold) {
+        parallelThreshold = Math.max(0, threshold);
+    }
+
+    int getParallelChunks(int keys) {
+        int threshold = parallelThreshold;
+        if ((threshold == 0) || (keys < 2 * threshold)) {
+            return 1;
+        }
+        return Math.min(keys / threshold, Runtime.getRuntime().availableProcessors());
+    }
+
+    synchronized ExecutorService getResolvers() {
+        if (resolvers == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            ThreadFactory factory = new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "PropertiesLoader-resolver");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+            // Idle threads end, so a discarded instance does not keep its pool alive
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                    RESOLVER_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    factory);
+            pool.allowCoreThreadTimeOut(true);
+            resolvers = pool;
+        }
+        return resolvers;
+    }
+
+    /**
+     * Returns whether compiled bundles are read.
+     *
+     * @return true if compiled bundles are read when present, false by default
+     */
+    public boolean isCompiledBundles() {
+        return compiledBundles;
+    }
+
+    /**
+     * Sets whether compiled bundles are read.
+     * <p>
+     * Compiled bundles are only read when the build produces them, see
+     * <code>BundleCompiler</code>. Otherwise each bundle creation would look for
+     * a missing resource. They are ignored while watching .properties files.
+     * </p>
+     *
+     * @param compiled true to read compiled bundles when present
+     * @see #writeCompiled(Class, Locale, OutputStream)
+     */
+    public void setCompiledBundles(boolean compiled) {
+        compiledBundles = compiled;
+    }
+
+    /**
+     * Returns whether properties are resolved on access.
+     *
+     * @return true if properties are resolved on access
+     */
+    public boolean isLazyResolution() {
+        return lazyResolution;
+    }
+
+    /**
+     * Sets whether properties are resolved on access.
+     * <p>
+     * By default, {@link #getProperties(Class, Locale)} resolves the whole bundle.
+     * In lazy mode, a property is resolved on its first access: reading a few
+     * keys of a large bundle only pays for these keys. Iterating on values or
+     * entries still resolves the whole bundle.
+     * </p>
+     *
+     * @param lazy true to resolve properties on access
+     */
+    public void setLazyResolution(boolean lazy) {
+        lazyResolution = lazy;
+    }
+
+    /**
+     * Returns the polling period of .properties files.
+     *
+     * @return the period in milliseconds, 0 when not watching
+     */
+    public long getWatchPeriod() {
+        return watchPeriod;
+    }
+
+    /**
+     * Sets the polling period of .properties files.
+     * <p>
+     * While watching, modified files invalidate their definitions and the
+     * bundles; reload listeners are notified. Only files of the file system are
+     * watched, compiled bundles are ignored. Loaded bundles are lost.
+     * </p>
+     * <p>
+     * Polling reads the modification date of the loaded files only.
+     * </p>
+     *
+     * @param period the period in milliseconds, 0 or less to stop watching
+     */
+    public synchronized void setWatchPeriod(long period) {
+        if (watcher != null) {
+            watcher.cancel();
+            watcher = null;
+        }
+        watchPeriod = Math.max(0, period);
+        watcheds.clear();
+        layers.clear(); // definitions are read again, and watched
+        cache.clear();
+
+        if (watchPeriod > 0) {
+            watcher = new Timer("PropertiesLoader-watcher", true);
+            watcher.schedule(new WatchTask(this), watchPeriod, watchPeriod);
+        }
+    }
+
+    /**
+     * Polling task, the loader is weakly referenced: an unused loader does not
+     * keep watching.
+     */
+    static class WatchTask extends TimerTask {
+
+        final WeakReference<PropertiesLoader> loaderRef;
+
+        WatchTask(PropertiesLoader loader) {
+            loaderRef = new WeakReference<PropertiesLoader>(loader);
+        }
+
+        @Override
+        public void run() {
+            PropertiesLoader loader = loaderRef.get();
+            if (loader == null) {
+                cancel();
+                return;
+            }
+            try {
+                loader.checkChanges();
+            } catch (RuntimeException e) {
+                loader.handle("watchFailed", String.valueOf(e));
+            }
+        }
+    }
+
+    public void addReloadListener(ReloadListener l) {
+        reloadListeners.add(l);
+    }
+
+    public void removeReloadListener(ReloadListener l) {
+        reloadListeners.remove(l);
+    }
+
+    /**
+     * Invalidates the definitions of the modified watched files.
+     * <p>
+     * Called by the watching thread. Only the definitions of the modified files
+     * are read again; the bundles are rebuilt from the definitions on next access,
+     * as a value may refer to another bundle.
+     * </p>
+     *
+     * @return the names of the classes or files whose definitions changed
+     */
+    public Set<String> checkChanges() {
+        Set<String> basenames = new HashSet<String>();
+        for (WatchedFile watched : watcheds.values()) {
+            long modified = watched.file.lastModified();
+            if (modified != watched.lastModified) {
+                watched.lastModified = modified;
+                for (String layerKey : watched.layerKeys) {
+                    layers.remove(layerKey);
+                }
+                basenames.add(watched.basename);
+            }
+        }
+        if (basenames.isEmpty()) {
+            return basenames;
+        }
+
+        cache.clear();
+        basenames = Collections.unmodifiableSet(basenames);
+        for (ReloadListener l : reloadListeners) {
+            l.bundlesChanged(basenames);
+        }
+        return basenames;
+    }
+
+    /**
+     * Records the files of a bundle while watching.
+     *
+     * @param basename name of the bundle
+     * @param locale locale of the bundle
+     * @param loader loader of the files
+     * @param layerKey key of the layer or null
+     */
+    void watch(String basename, Locale locale, ClassLoader loader, String layerKey) {
+        for (Locale candidate : WATCH_CONTROL.getCandidateLocales(basename, locale)) {
+            String name = WATCH_CONTROL.toResourceName(
+                    WATCH_CONTROL.toBundleName(basename, candidate), "properties");
+            URL url = loader.getResource(name);
+            if ((url == null) || !"file".equals(url.getProtocol())) {
+                continue;
+            }
+
+            File file;
+            try {
+                file = new File(url.toURI());
+            } catch (URISyntaxException e) {
+                continue;
+            }
+            WatchedFile watched = watcheds.get(file);
+            if (watched == null) {
+                watched = new WatchedFile(file, basename);
+                WatchedFile previous = watcheds.putIfAbsent(file, watched);
+                if (previous != null) {
+                    watched = previous;
+                }
+            }
+            if (layerKey != null) {
+                watched.layerKeys.add(layerKey);
+            }
+        }
+    }
+
+    ResourceBundle.Control getControl() {
+        return (watchPeriod > 0) ? WATCH_CONTROL : RES_CONTROL;
+    }
+
     public void addGlobals(Map<?, ?> globals) {
         addGlobals("", globals);
     }
@@ -245,10 +844,30 @@ public class PropertiesLoader {
 
     public Map<String, String> getProperties(Class<?> type, Locale locale) {
         Bundle props = getBundleImpl(type, locale);
-        props.resolve(); // optimisation for lock
+        if (!lazyResolution) {
+            props.resolve(); // all at once, possibly in parallel
+        }
         return props;
     }
 
+    /**
+     * Returns the names of the classes and files read by properties.
+     * <p>
+     * Bundles referenced by resolved values are included, transitively. Values
+     * not resolved yet are ignored.
+     * </p>
+     *
+     * @param properties properties returned by this loader
+     * @return the names, empty for properties of another origin
+     */
+    public Set<String> getBundleNames(Map<String, String> properties) {
+        Set<String> names = new HashSet<String>();
+        if (properties instanceof Bundle) {
+            ((Bundle) properties).references.collect(names);
+        }
+        return names;
+    }
+
     protected Bundle getBundleImpl(Class<?> type, Locale locale) {
         String cacheKey = createKey(type, locale);
         Bundle props = cache.get(cacheKey);
@@ -263,33 +882,191 @@ public class PropertiesLoader {
     }
 
     protected Bundle createBundle(Class<?> type, Locale locale) {
-        Bundle props = new Bundle(type.getName(), locale, type.getClassLoader());
+        Bundle props = readCompiled(type, locale);
+        return (props != null) ? props : createSourceBundle(type, locale);
+    }
 
+    /**
+     * Creates the bundle of a class by merging the .properties files of its
+     * hierarchy.
+     *
+     * @param type class of the bundle
+     * @param locale locale of the bundle
+     * @return the merged bundle
+     */
+    protected Bundle createSourceBundle(Class<?> type, Locale locale) {
         Class<?> until = until(type);
         if (until == null) {
             until = Object.class;
         }
 
-        List<ResourceBundle> bundles = new LinkedList<ResourceBundle>();
+        List<Layer> hierarchy = new ArrayList<Layer>();
+        List<String> names = new ArrayList<String>();
         for (Class<?> c = type; (c != null) && !c.equals(until); c = c.getSuperclass()) {
-            String basename = c.getName();
-
-            try {
-                bundles.add(0,
-                        ResourceBundle.getBundle(basename, locale, getClassLoader(c),
-                        RES_CONTROL));
-            } catch (MissingResourceException e) {
-                handle("noBundle", basename);
+            Layer layer = getLayer(c, locale);
+            if (layer != Layer.EMPTY) {
+                hierarchy.add(layer);
+                names.add(c.getName());
             }
         }
 
-        for (ResourceBundle bundle : bundles) {
+        Bundle props = new Bundle(type.getName(), locale, type.getClassLoader(),
+                hierarchy.toArray(new Layer[hierarchy.size()]));
+        props.references.basenames.addAll(names);
+        return props;
+    }
+
+    /**
+     * Returns the definitions of the .properties files of a class, including the
+     * parent locales.
+     *
+     * @param type class of the definitions
+     * @param locale locale of the definitions
+     * @return the shared layer
+     */
+    Layer getLayer(Class<?> type, Locale locale) {
+        String cacheKey = createKey(type, locale);
+        Layer layer = layers.get(cacheKey);
+        if (layer != null) {
+            return layer;
+        }
+
+        String basename = type.getName();
+        if (watchPeriod > 0) {
+            watch(basename, locale, getClassLoader(type), cacheKey);
+        }
+        try {
+            ResourceBundle bundle =
+                    ResourceBundle.getBundle(basename, locale, getClassLoader(type), getControl());
+            Map<String, Object> definitions = new HashMap<String, Object>();
             for (String key : bundle.keySet()) {
-                props.putDefinition(key, bundle.getString(key));
+                definitions.put(key, Layer.toDefinition(bundle.getString(key)));
             }
+            layer = new Layer(definitions);
+        } catch (MissingResourceException e) {
+            handle("noBundle", basename);
+            layer = Layer.EMPTY;
         }
+        layers.put(cacheKey, layer);
+        return layer;
+    }
 
-        return props;
+    /**
+     * Returns the resource name of a compiled bundle.
+     *
+     * @param type class of the bundle
+     * @param locale locale of the bundle
+     * @return the resource name
+     */
+    public static String getCompiledName(Class<?> type, Locale locale) {
+        return RES_CONTROL.toBundleName(type.getName(), locale).replace('.', '/')
+                + COMPILED_SUFFIX;
+    }
+
+    /**
+     * Writes the compiled bundle of a class.
+     * <p>
+     * A compiled bundle contains the definitions of the class hierarchy and of
+     * the parent locales, already merged. Definitions without reference are stored
+     * resolved; references are resolved when read as they may depend on globals.
+     * </p>
+     *
+     * @param type class of the bundle
+     * @param locale locale of the bundle
+     * @param output stream to write, not closed
+     * @throws IOException if writing fails
+     */
+    public void writeCompiled(Class<?> type, Locale locale, OutputStream output)
+            throws IOException {
+        Bundle props = createSourceBundle(type, locale);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        out.writeInt(COMPILED_MAGIC);
+        out.writeInt(COMPILED_VERSION);
+        out.writeInt(props.size());
+        for (String key : props.keySet()) {
+            Object definition = props.getDefinition(key);
+            writeString(out, key);
+            if (definition instanceof String) { // without reference
+                out.writeBoolean(true);
+                writeString(out, (String) definition);
+            } else {
+                out.writeBoolean(false);
+                writeString(out, ((String[]) definition)[0]);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Opens the compiled bundle of a class.
+     *
+     * @param type class of the bundle
+     * @param locale locale of the bundle
+     * @return the content or null if no bundle is compiled
+     */
+    protected InputStream openCompiled(Class<?> type, Locale locale) {
+        if (!compiledBundles || (watchPeriod > 0)) {
+            return null;
+        }
+        return getClassLoader(type).getResourceAsStream(getCompiledName(type, locale));
+    }
+
+    /**
+     * Reads the compiled bundle of a class.
+     *
+     * @param type class of the bundle
+     * @param locale locale of the bundle
+     * @return the bundle or null if no valid bundle is compiled
+     */
+    protected Bundle readCompiled(Class<?> type, Locale locale) {
+        InputStream input = openCompiled(type, locale);
+        if (input == null) {
+            return null;
+        }
+
+        Bundle props = new Bundle(type.getName(), locale, type.getClassLoader());
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+            if ((in.readInt() != COMPILED_MAGIC) || (in.readInt() != COMPILED_VERSION)) {
+                handle("invalidCompiled", getCompiledName(type, locale));
+                return null;
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                String key = readString(in);
+                if (in.readBoolean()) {
+                    props.putResolvedDefinition(key, readString(in));
+                } else {
+                    props.putDefinition(key, readString(in));
+                }
+            }
+            return props;
+        } catch (IOException e) {
+            handle("invalidCompiled", getCompiledName(type, locale));
+            return null;
+        } finally {
+            try {
+                input.close();
+            } catch (IOException ignore) {
+                // nothing to do
+            }
+        }
+    }
+
+    // writeUTF is limited to 64k
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if ((length < 0) || (length > COMPILED_MAX_STRING)) {
+            throw new IOException("Invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
     }
 
     private ClassLoader getClassLoader(Class<?> type) {
@@ -320,8 +1097,11 @@ public class PropertiesLoader {
     protected Bundle createBundle(String basename, Locale locale, ClassLoader loader) {
         Bundle props = new Bundle(basename, locale, loader);
 
+        if (watchPeriod > 0) {
+            watch(basename, locale, loader, null);
+        }
         try {
-            ResourceBundle bundle = ResourceBundle.getBundle(basename, locale, loader, RES_CONTROL);
+            ResourceBundle bundle = ResourceBundle.getBundle(basename, locale, loader, getControl());
             for (String key : bundle.keySet()) {
                 props.putDefinition(key, bundle.getString(key));
             }
@@ -348,6 +1128,7 @@ public class PropertiesLoader {
             String basename = key.substring(0, indexBundle);
             localKey = key.substring(indexBundle + 1);
             definingBundle = getBundle(basename, bundle.getLocale(), bundle.getContext());
+            bundle.references.targets.add(definingBundle.references);
         } else {
             handle("malformedKey", key + " in " + bundle.getBasename());
         } // else not a cross reference fullKey == localKey == key
@@ -391,73 +1172,90 @@ public class PropertiesLoader {
         return newValue;
     }
 
+    /**
+     * Substitutes the references of an expression.
+     * <p>
+     * The expression is read once: text before a reference is appended as is and
+     * substituted values are never read again. A reference preceded by an odd count of
+     * '$' is escaped, each pair of '$' being replaced by one.
+     * </p>
+     *
+     * @param bundle bundle of the expression
+     * @param expr expression to resolve
+     * @param refStack keys being resolved
+     * @return the substituted expression
+     */
     protected String resolveExpression(Bundle bundle, String expr, Deque<String> refStack) {
+        int i = expr.indexOf(SUBST_TOKEN);
+        if (i == -1) {
+            return expr;
+        }
 
+        StringBuilder result = new StringBuilder(expr.length() + 16);
         int vegas = 0; // Vegas keeps a trace of what has been substitued
         // Note: What Happens in Vegas, Stays in Vegas.
-        for (int i = expr.indexOf(SUBST_TOKEN); i != -1; i = expr.indexOf(SUBST_TOKEN, i)) {
+        for (; i != -1; i = expr.indexOf(SUBST_TOKEN, vegas)) {
             int escaping = 0;
             while (((i - escaping) > vegas) && (expr.charAt(i - escaping - 1) == ESCAPE)) {
                 escaping++;
             }
 
             if (escaping > 0) {
-                String head = expr.substring(0, i - escaping);
-                String tail = expr.substring(i);
-
-                StringBuffer escaped = new StringBuffer();
-                while (escaping > 1) {
-                    escaped.append(ESCAPE);
-                    escaping = escaping - 2;
+                result.append(expr, vegas, i - escaping);
+                for (int pair = escaping / 2; pair > 0; pair--) {
+                    result.append(ESCAPE);
                 }
-                expr = head + escaped + tail;
-                vegas = head.length() + escaped.length(); // +1 : escape car
-                i = vegas;
+                vegas = i;
 
-                if (escaping == 1) {
+                if ((escaping % 2) == 1) { // escaped reference
+                    result.append(ESCAPE);
                     vegas++;
-                    i++;
                     continue;
-                } // else 0: no escape
-            }
-
-            int end = -1;
-
-            // Seek end of token
-            int position = i + SUBST_TOKEN.length();
-            int depth = 0; // Inclusion flag
-            while (end == -1) {
-                int nextRef = expr.indexOf(SUBST_TOKEN, position);
-                int nextEnd = expr.indexOf(END_TOKEN, position);
-                if (nextEnd == -1) {
-                    handle("IllegalExpression", expr);
-                    return expr;
-                } else if ((nextRef != -1) && (nextRef < nextEnd)) {
-                    depth++;
-                    position = nextRef + SUBST_TOKEN.length();
-                } else if (depth > 0) {
-                    depth--;
-                    position = nextEnd + END_TOKEN.length();
-                } else { // depth == 0
-                    end = nextEnd;
-                }
+                } // else no escape
             }
 
-
-            // Cutting the string
-            String head = expr.substring(0, i);
-            String tail = expr.substring(end + END_TOKEN.length(), expr.length());
+            int end = findEnd(expr, i + SUBST_TOKEN.length());
+            if (end == -1) {
+                result.append(expr, vegas, expr.length());
+                String illegal = result.toString();
+                handle("IllegalExpression", illegal);
+                return illegal;
+            }
 
             String var = expr.substring(i + SUBST_TOKEN.length(), end);
             var = resolveExpression(bundle, var, refStack);
 
-            String subst = resolveProperty(bundle, var, refStack);
+            result.append(expr, vegas, i).append(resolveProperty(bundle, var, refStack));
+            vegas = end + END_TOKEN.length();
+        }
+        return result.append(expr, vegas, expr.length()).toString();
+    }
 
-            expr = head + subst + tail;
-            i = head.length() + subst.length();
-            vegas = i;
+    /**
+     * Seeks the end of a reference, skipping nested references.
+     *
+     * @param expr expression
+     * @param position start of the reference name
+     * @return index of the end token or -1
+     */
+    static int findEnd(String expr, int position) {
+        int depth = 0; // Inclusion flag
+        int last = expr.length() - END_TOKEN.length();
+        while (position <= last) {
+            if (expr.startsWith(END_TOKEN, position)) {
+                if (depth == 0) {
+                    return position;
+                }
+                depth--;
+                position += END_TOKEN.length();
+            } else if (expr.startsWith(SUBST_TOKEN, position)) {
+                depth++;
+                position += SUBST_TOKEN.length();
+            } else {
+                position++;
+            }
         }
-        return expr;
+        return -1;
     }
 
 
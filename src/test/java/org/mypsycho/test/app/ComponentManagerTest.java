@@ -0,0 +1,60 @@
+package org.mypsycho.test.app;
+
+import java.awt.EventQueue;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.swing.JLabel;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.swing.app.Application;
+import org.mypsycho.swing.app.ComponentManager;
+
+
+/**
+ * Injection of managed components after a bundle change.
+ *
+ * @author Peransin Nicolas
+ */
+public class ComponentManagerTest {
+
+    public static class Label extends JLabel {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    static class TestApplication extends Application {
+
+        @Override
+        protected void startup() {}
+    }
+
+    @Test
+    public void testReinject() throws Exception {
+        EventQueue.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                Application app = new TestApplication();
+                app.setLocale(Locale.ENGLISH);
+                ComponentManager manager = app.getContext().getComponentManager();
+
+                Label label = new Label();
+                JLabel other = new JLabel("other");
+                manager.register(label, other);
+                Assert.assertEquals("injected", label.getText());
+
+                label.setText("modified");
+                manager.reinject(Collections.<Class<?>> singleton(JLabel.class));
+                Assert.assertEquals("modified", label.getText());
+                Assert.assertEquals("other", other.getText());
+
+                Set<Class<?>> types = Collections.<Class<?>> singleton(Label.class);
+                manager.reinject(types);
+                Assert.assertEquals("injected", label.getText());
+            }
+        });
+    }
+}
@@ -4,9 +4,11 @@
  */
 package org.mypsycho.test.app;
 
+import java.util.Random;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.mypsycho.beans.InjectionTemplate;
 
@@ -84,6 +86,58 @@ public class InjectionTemplateTest extends InjectionTemplate {
     
     
     
+    /** Former parsing with the regular expression. */
+    String regexParse(String s) {
+        Matcher matcher = pattern.matcher(s.trim());
+        if (!matcher.find()) {
+            return null;
+        }
+        String value = matcher.group(16);
+        if (value != null) { // ignore '='
+            value = value.substring(1);
+        }
+        try {
+            String[][] args = args(matcher.group(13));
+            return describe(createTemplate(fullName(matcher.group(1), args), value, args));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static String describe(InjectionTemplate call) {
+        return (call == null) ? null
+                : call.getName() + "|" + call.getValue() + "|" + call.getOptions();
+    }
+
+    @Test
+    public void testScanner() {
+        String[] samples = {
+            "%{view}", "%{view(mainFrame)(toolbar)}", "%{view=@rtds q M%}",
+            "%{view{op=4235fd}}", "%{view{op=4235fd}{op=45fd}{op= rez f35fd | }}",
+            "%{view{op=4235fd}=@rtds q M%}", "%{a.b[2](c){x=1}{y=2}=v}", "%{a{x=1}=}",
+            "%{a{x=}}", "%{a{=1}}", "%{a.}", "%{[1].b}", "%{(k)}", "%{a{x=1}}=v}",
+            "%{a{x=1}=v}=w}", "%{a=b\nc}", "%{a b}", "%{a{x=1}{x=2}}", "%{\u00a7~!@-a}"
+        };
+        for (String sample : samples) {
+            Assert.assertEquals(sample, regexParse(sample), describe(parse(sample)));
+        }
+
+        // Random definitions built from the grammar tokens
+        String[] tokens = { "a", "b1", "-", "@", ".", "(", ")", "[", "]", "3", "{", "}", "=",
+            " ", "x", "}{", "\n" };
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sample = new StringBuilder("%{");
+            int length = random.nextInt(10);
+            for (int t = 0; t < length; t++) {
+                sample.append(tokens[random.nextInt(tokens.length)]);
+            }
+            String definition = sample.append('}').toString();
+            Assert.assertEquals(definition, regexParse(definition), describe(parse(definition)));
+        }
+        Assert.assertSame(parse("%{view=a}"), parse("%{view=a}"));
+    }
+    
     // "%\{(\w+((\.\w+)|(\(\w+\))|(\[\d+\]))*)(\{\w+=.*\})*(\=(.*))?\}"
     
     
@@ -0,0 +1,62 @@
+package org.mypsycho.test.app;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.beans.PropertyUtilsBean;
+import org.mypsycho.swing.app.ResourceManager;
+
+
+/**
+ * Background compilation of descriptors.
+ *
+ * @author Peransin Nicolas
+ */
+public class ResourceManagerTest {
+
+    public static class Bean {
+
+        String text;
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+
+    @Test
+    public void testPrecompileLater() throws Exception {
+        ResourceManager manager = new ResourceManager(null);
+        final List<String> failures = new CopyOnWriteArrayList<String>();
+        manager.register(new PropertyUtilsBean.UtilsListener() {
+
+            @Override
+            public void handle(Object event, String detail, Throwable t) {
+                failures.add(event + " " + detail);
+            }
+        });
+        List<Future<?>> tasks = manager.precompileLater(
+                Arrays.<Class<?>> asList(Bean.class, String.class), Locale.ENGLISH);
+        Assert.assertEquals(2, tasks.size());
+        for (Future<?> task : tasks) {
+            task.get(10, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals("[]", failures.toString());
+        Assert.assertEquals(2, manager.getDescriptorCount());
+        Assert.assertEquals(2, manager.getDescriptorMisses());
+
+        // Cached
+        Assert.assertEquals("precompiled", manager.inject(new Bean(), Locale.ENGLISH).getText());
+        Assert.assertEquals(2, manager.getDescriptorMisses());
+        Assert.assertEquals(1, manager.getDescriptorHits());
+    }
+}
@@ -0,0 +1,74 @@
+package org.mypsycho.test.app;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+
+import javax.swing.border.Border;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.beans.converter.ConverterContainer;
+import org.mypsycho.swing.app.reflect.BorderConverter;
+import org.mypsycho.swing.app.reflect.DerivedFontConverter;
+import org.mypsycho.swing.app.reflect.UiConverter;
+
+
+/**
+ * Sharing of immutable conversions.
+ *
+ * @author Peransin Nicolas
+ */
+public class SharedConversionTest {
+
+    ConverterContainer createConverter() {
+        ConverterContainer converter = new ConverterContainer();
+        converter.register(new UiConverter());
+        converter.register(new BorderConverter(converter));
+        converter.register(new DerivedFontConverter());
+        return converter;
+    }
+
+    @Test
+    public void testShared() {
+        ConverterContainer converter = createConverter();
+
+        Object font = converter.convert(Font.class, "Dialog-BOLD-12", null);
+        Assert.assertSame(font, converter.convert(Font.class, "Dialog-BOLD-12", null));
+        Assert.assertNotSame(font, converter.convert(Font.class, "Dialog-PLAIN-12", null));
+        Assert.assertSame(converter.convert(Color.class, "#102030", null),
+                converter.convert(Color.class, "#102030", null));
+
+        Object border = converter.convert(Border.class, "line(#102030, 2)", null);
+        Assert.assertSame(border, converter.convert(Border.class, "line(#102030, 2)", null));
+        // font, color, color as border argument and border
+        Assert.assertEquals(4, converter.getSharedValues().getHits());
+        Assert.assertEquals(4, converter.getSharedValues().getSize());
+        Assert.assertTrue(converter.getSharedValues().isWeakKeys());
+
+        String compound = "compound(line(#102030), empty(1, 2, 3, 4))";
+        Assert.assertTrue(converter.isShared(Border.class, compound));
+        Assert.assertSame(converter.convert(Border.class, compound, null),
+                converter.convert(Border.class, compound, null));
+    }
+
+    @Test
+    public void testNotShared() {
+        ConverterContainer converter = createConverter();
+
+        // Mutable
+        Assert.assertNotSame(converter.convert(Dimension.class, "10,20", null),
+                converter.convert(Dimension.class, "10,20", null));
+        // Depending on the component
+        Assert.assertFalse(converter.isShared(Font.class, "derived-BOLD"));
+        Assert.assertFalse(converter.isShared(Border.class,
+                "titled(line(#102030), title, 0, 0, derived-BOLD)"));
+        // Titled borders are mutable
+        Assert.assertFalse(converter.isShared(Border.class, "titled(title)"));
+        Assert.assertFalse(converter.isShared(Border.class, "titled(line(#102030), title)"));
+        Assert.assertNotSame(converter.convert(Border.class, "titled(title)", null),
+                converter.convert(Border.class, "titled(title)", null));
+        Assert.assertFalse(converter.isShared(Border.class, "line(#102030"));
+        Assert.assertEquals(0, converter.getSharedValues().getSize());
+    }
+}
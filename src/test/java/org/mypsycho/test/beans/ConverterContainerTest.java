@@ -0,0 +1,86 @@
+package org.mypsycho.test.beans;
+
+import java.lang.annotation.ElementType;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.beans.converter.AbstractTypeConverter;
+import org.mypsycho.beans.converter.ConverterContainer;
+
+
+/**
+ * Dispatch of conversions by type.
+ *
+ * @author Peransin Nicolas
+ */
+public class ConverterContainerTest {
+
+    public static class Named {
+
+        final String name;
+
+        public Named() {
+            this("default");
+        }
+
+        public Named(String name) {
+            this.name = name;
+        }
+    }
+
+    @Test
+    public void testReflect() {
+        ConverterContainer converter = new ConverterContainer();
+
+        Assert.assertSame(ElementType.FIELD, converter.convert(ElementType.class, "FIELD", null));
+        Assert.assertEquals(3, ((int[]) converter.convert(int[].class, "3", null)).length);
+        Assert.assertEquals(2, ((List<?>) converter.convert(List.class, "2", null)).size());
+        Assert.assertEquals("value", converter.convert(Object.class, "value", null));
+        Assert.assertEquals("n", ((Named) converter.convert(Named.class, "n", null)).name);
+        Assert.assertEquals("default", ((Named) converter.convert(Named.class, null, null)).name);
+        // Resolved once
+        Assert.assertSame(converter.getConverter(Named.class), converter.getConverter(Named.class));
+    }
+
+    @Test
+    public void testConvertAll() {
+        ConverterContainer converter = new ConverterContainer();
+        Assert.assertArrayEquals(new Object[] { 1, 2, 30 },
+                converter.convertAll(Integer.TYPE, new String[] { "1", "2", "0x1e" }, null));
+        Assert.assertArrayEquals(new Object[] { ElementType.TYPE, ElementType.FIELD },
+                converter.convertAll(ElementType.class, new String[] { "TYPE", "FIELD" }, null));
+        String[] texts = { "a", "b" };
+        Assert.assertArrayEquals(texts, converter.convertAll(String.class, texts, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownConstant() {
+        new ConverterContainer().convert(ElementType.class, "UNKNOWN", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInterface() {
+        new ConverterContainer().convert(Runnable.class, "run", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoConstructor() {
+        new ConverterContainer().convert(Class.class, "x", null);
+    }
+
+    @Test
+    public void testRegister() {
+        ConverterContainer converter = new ConverterContainer();
+        Assert.assertEquals("n", ((Named) converter.convert(Named.class, "n", null)).name);
+
+        converter.register(new AbstractTypeConverter(Named.class) {
+
+            public Object convert(Class<?> expected, String value, Object context) {
+                return new Named("registered " + value);
+            }
+        });
+        Assert.assertEquals("registered n",
+                ((Named) converter.convert(Named.class, "n", null)).name);
+    }
+}
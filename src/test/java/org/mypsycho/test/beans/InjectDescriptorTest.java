@@ -0,0 +1,83 @@
+package org.mypsycho.test.beans;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.beans.InjectDescriptor;
+import org.mypsycho.beans.Injection;
+import org.mypsycho.beans.Injector;
+import org.mypsycho.test.util.Benchmarks;
+
+
+/**
+ * Build of injection trees from large bundles.
+ *
+ * @author Peransin Nicolas
+ */
+public class InjectDescriptorTest {
+
+    static class GeneratedInjector extends Injector {
+
+        final int size;
+
+        GeneratedInjector(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Map<String, String> getValue(Class<?> type, Locale locale) {
+            Map<String, String> values = new HashMap<String, String>();
+            for (int i = 0; i < size / 2; i++) {
+                values.put("items[" + i + "].text", "item" + i);
+                values.put("menu(m" + i + ").text", "menu" + i);
+            }
+            return values;
+        }
+    }
+
+    InjectDescriptor build(int size) {
+        return new InjectDescriptor(new GeneratedInjector(size), Object.class, Locale.ROOT);
+    }
+
+    void checkTree(InjectDescriptor descriptor, int size) {
+        for (int i = 0; i < size / 2; i++) {
+            Injection item = descriptor.getPath("items[" + i + "]", false);
+            Assert.assertNotNull(item);
+            Assert.assertEquals(Injection.Nature.INDEXED, item.getNature());
+            Assert.assertEquals(i, item.getId());
+            Assert.assertSame(item, descriptor.getPath("items[" + i + "].text", false).getParent());
+
+            Injection menu = descriptor.getPath("menu(m" + i + ")", false);
+            Assert.assertNotNull(menu);
+            Assert.assertEquals(Injection.Nature.MAPPED, menu.getNature());
+            Assert.assertEquals("m" + i, menu.getId());
+        }
+        Assert.assertNull(descriptor.getPath("items[" + size + "]", false));
+        Assert.assertNull(descriptor.getPath("menu(m" + size + ")", false));
+    }
+
+    @Test
+    public void testSmallBundle() {
+        checkTree(build(1000), 1000);
+    }
+
+    @Test
+    public void testLargeBundle() {
+        checkTree(build(10000), 10000);
+    }
+
+    @Test
+    public void benchmarkBuild() {
+        Benchmarks.assumeEnabled();
+        build(10000); // warm up
+        for (int size : new int[] { 1000, 10000 }) {
+            long start = System.nanoTime();
+            build(size);
+            System.out.println("Descriptor of " + size + " keys built in "
+                    + Benchmarks.elapsed(start) + " ms");
+        }
+    }
+}
@@ -1,12 +1,24 @@
 package org.mypsycho.test.beans;
 
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mypsycho.beans.InjectionReport;
 import org.mypsycho.beans.Injector;
+import org.mypsycho.beans.converter.AbstractTypeConverter;
+import org.mypsycho.util.CachePolicy;
+import org.mypsycho.util.PolicyCache;
+import org.mypsycho.util.PolicyCacheMBean;
 
 
 
@@ -86,6 +98,57 @@ public class InjectorTest {
 
     public static class BeanB extends Bean {}
 
+    public static class Shared {}
+
+    public static class RefBean {
+
+        String text;
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+
+    public static class WatchedInjector extends Injector {
+
+        final List<Set<Class<?>>> invalidations = new ArrayList<Set<Class<?>>>();
+
+        public Set<Class<?>> invalidate(String... basenames) {
+            return invalidateDescriptors(new HashSet<String>(Arrays.asList(basenames)));
+        }
+
+        @Override
+        protected void descriptorsInvalidated(Set<Class<?>> types) {
+            invalidations.add(types);
+        }
+    }
+
+    public static class Item {
+
+        final String name;
+
+        Item(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class ItemBean {
+
+        Item[] items = new Item[3];
+
+        public Item[] getItems() {
+            return items;
+        }
+
+        public void setItems(Item[] items) {
+            this.items = items;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void testBase() throws Exception {
@@ -134,4 +197,273 @@ public class InjectorTest {
         Assert.assertEquals("b", ((Map<String, ?>) bean.getMap().get("key4")).get("b"));
         Assert.assertEquals("new1", bean.getList().get(1));
     }
+
+    @Test
+    public void testRepeatedInjection() throws Exception {
+        Injector injector = new Injector() {
+
+            @Override
+            protected void notify(Object event, String detail, Throwable t) {
+                throw new RuntimeException(event + ":" + detail, t);
+            }
+        };
+
+        injector.setLocale(Locale.ENGLISH);
+        Bean first = injector.inject(new Bean());
+        Bean second = injector.inject(new Bean());
+
+        Assert.assertEquals("val1", second.getProp1());
+        Assert.assertArrayEquals(new int[] { 100, 0, 102 }, second.getArray());
+        Assert.assertEquals("m1", second.getMap().get("key1"));
+        Assert.assertEquals("value", second.getList().get(1));
+
+        // Compiled injection must not share mutable values between beans
+        Assert.assertNotSame(first.getArray(), second.getArray());
+        Assert.assertNotSame(first.getMap(), second.getMap());
+        Assert.assertNotSame(first.getList(), second.getList());
+
+        // A subclass uses its own compiled injection
+        Bean derived = injector.inject(new BeanB());
+        Assert.assertEquals("new1", derived.getProp1());
+        Assert.assertEquals("val1", injector.inject(new Bean()).getProp1());
+    }
+
+    @Test
+    public void testPrecompile() throws Exception {
+        Injector injector = new Injector() {
+
+            @Override
+            protected void notify(Object event, String detail, Throwable t) {
+                throw new RuntimeException(event + ":" + detail, t);
+            }
+        };
+
+        injector.setLocale(Locale.ENGLISH);
+        injector.precompile(Arrays.<Class<?>> asList(Bean.class, BeanB.class), Locale.ENGLISH);
+        Assert.assertEquals(2, injector.getDescriptorMisses());
+        Assert.assertEquals(2, injector.getDescriptorCount());
+
+        Assert.assertEquals("val1", injector.inject(new Bean()).getProp1());
+        Assert.assertEquals("new1", injector.inject(new BeanB()).getProp1());
+        Assert.assertEquals(2, injector.getDescriptorMisses());
+        Assert.assertEquals(2, injector.getDescriptorHits());
+
+        injector.inject(new Bean(), Locale.FRENCH);
+        Assert.assertEquals(3, injector.getDescriptorCount());
+    }
+
+    /**
+     * Enqueue the weak keys of a cache as the collector does once they are reclaimed.
+     */
+    static void enqueueKeys(PolicyCacheMBean cache) throws Exception {
+        Field segments = PolicyCache.class.getDeclaredField("segments");
+        segments.setAccessible(true);
+        for (Map<?, ?> segment : (Map<?, ?>[]) segments.get(cache)) {
+            for (Object key : segment.keySet()) {
+                ((Reference<?>) key).enqueue();
+            }
+        }
+    }
+
+    @Test
+    public void testReclaimedDescriptors() throws Exception {
+        Injector injector = new Injector();
+        injector.setCachePolicy(new CachePolicy(0, CachePolicy.Strength.STRONG));
+        Assert.assertTrue(injector.getInjectionCache().isWeakKeys());
+
+        Assert.assertEquals("val1", injector.inject(new Bean(), Locale.ENGLISH).getProp1());
+        Assert.assertEquals(1, injector.getDescriptorCount());
+        enqueueKeys(injector.getInjectionCache());
+        Assert.assertEquals(0, injector.getDescriptorCount());
+        Assert.assertEquals(1, injector.getInjectionCache().getCollected());
+        Assert.assertEquals("val1", injector.inject(new Bean(), Locale.ENGLISH).getProp1());
+        Assert.assertEquals(2, injector.getDescriptorMisses());
+    }
+
+    @Test
+    public void testInvalidateDescriptors() throws Exception {
+        WatchedInjector injector = new WatchedInjector();
+        injector.setLocale(Locale.ENGLISH);
+        Assert.assertEquals("shared", injector.inject(new RefBean()).getText());
+        injector.inject(new Bean());
+        injector.inject(new BeanB());
+        Assert.assertEquals(3, injector.getDescriptorCount());
+
+        // Unused bundle
+        Assert.assertTrue(injector.invalidate("unknown").isEmpty());
+        Assert.assertTrue(injector.invalidations.isEmpty());
+
+        // Referenced bundle
+        Set<Class<?>> expected = new HashSet<Class<?>>();
+        expected.add(RefBean.class);
+        Assert.assertEquals(expected, injector.invalidate(Shared.class.getName()));
+        Assert.assertEquals(Arrays.asList(expected), injector.invalidations);
+        Assert.assertEquals(2, injector.getDescriptorCount());
+
+        // Hierarchy
+        expected.clear();
+        expected.add(Bean.class);
+        expected.add(BeanB.class);
+        Assert.assertEquals(expected, injector.invalidate(Bean.class.getName()));
+        Assert.assertEquals(0, injector.getDescriptorCount());
+
+        // Compiled again
+        Assert.assertEquals("shared", injector.inject(new RefBean()).getText());
+        Assert.assertEquals(1, injector.getDescriptorCount());
+    }
+
+    @Test
+    public void testIndexedFailure() throws Exception {
+        final List<String> failures = new ArrayList<String>();
+        Injector injector = new Injector() {
+
+            @Override
+            protected void notify(Object event, String detail, Throwable t) {
+                failures.add(String.valueOf(event));
+            }
+
+            @Override
+            public Map<String, String> getValue(Class<?> type, Locale locale) {
+                Map<String, String> values = new HashMap<String, String>();
+                values.put("items[0]", "a");
+                values.put("items[1]", "bad");
+                values.put("items[2]", "c");
+                return values;
+            }
+        };
+        injector.register(new AbstractTypeConverter(Item.class) {
+
+            {
+                setShared(Item.class);
+            }
+
+            @Override
+            public boolean isShared(Class<?> expected, String value) {
+                if ("bad".equals(value)) {
+                    throw new IllegalArgumentException(value);
+                }
+                return super.isShared(expected, value);
+            }
+
+            public Object convert(Class<?> expected, String value, Object context) {
+                if ("bad".equals(value)) {
+                    throw new IllegalArgumentException(value);
+                }
+                return new Item(value);
+            }
+        });
+
+        // Only the malformed element fails
+        Item[] items = injector.inject(new ItemBean(), Locale.ENGLISH).getItems();
+        Assert.assertEquals("a", items[0].name);
+        Assert.assertNull(items[1]);
+        Assert.assertEquals("c", items[2].name);
+        Assert.assertEquals(1, failures.size());
+    }
+
+    @Test
+    public void testInjectAll() throws Exception {
+        Injector injector = new Injector() {
+
+            @Override
+            protected void notify(Object event, String detail, Throwable t) {
+                throw new RuntimeException(event + ":" + detail, t);
+            }
+        };
+
+        List<Bean> beans = Arrays.asList(new Bean(), new BeanB(), new Bean(), new BeanB());
+        injector.injectAll(beans, Locale.ENGLISH);
+        Assert.assertEquals("val1", beans.get(2).getProp1());
+        Assert.assertEquals("new1", beans.get(3).getProp1());
+        // One lookup per class
+        Assert.assertEquals(2, injector.getDescriptorMisses());
+        Assert.assertEquals(0, injector.getDescriptorHits());
+    }
+
+    @Test
+    public void testInjectAllOverridden() throws Exception {
+        final List<Object> injecteds = new ArrayList<Object>();
+        Injector injector = new Injector() {
+
+            @Override
+            public <T> T inject(Object parent, Locale locale, String path, T element) {
+                injecteds.add(element);
+                return super.inject(parent, locale, path, element);
+            }
+        };
+
+        List<Bean> beans = Arrays.asList(new Bean(), new BeanB());
+        injector.injectAll(beans, Locale.ENGLISH);
+        Assert.assertEquals(beans, injecteds);
+        Assert.assertEquals("new1", beans.get(1).getProp1());
+    }
+
+    @Test
+    public void testPrepare() throws Exception {
+        final Injector injector = new Injector() {
+
+            @Override
+            protected void notify(Object event, String detail, Throwable t) {
+                throw new RuntimeException(event + ":" + detail, t);
+            }
+        };
+        InjectionReport report = new InjectionReport();
+        injector.setProfiler(report);
+
+        final List<Bean> beans = Arrays.asList(new Bean(), new Bean());
+        Thread preparer = new Thread() {
+
+            @Override
+            public void run() {
+                injector.prepare(beans, Locale.ENGLISH);
+            }
+        };
+        preparer.start();
+        preparer.join();
+        Assert.assertEquals(1, injector.getDescriptorMisses());
+        Assert.assertNull(beans.get(0).getProp1()); // nothing applied
+
+        injector.injectAll(beans, Locale.ENGLISH);
+        Assert.assertEquals("val1", beans.get(1).getProp1());
+        for (InjectionReport.Entry entry : report.getProperties()) {
+            if (entry.getName().endsWith("#prop1")) {
+                // converted once in preparation
+                Assert.assertEquals(3, entry.getConversions());
+                Assert.assertEquals(2, entry.getCachedConversions());
+            }
+        }
+    }
+
+    @Test
+    public void testProfiler() throws Exception {
+        Injector injector = new Injector();
+        InjectionReport report = new InjectionReport();
+        injector.setProfiler(report);
+        injector.setLocale(Locale.ENGLISH);
+        injector.inject(new Bean());
+        injector.inject(new Bean());
+
+        InjectionReport.Entry bean = report.getClasses().get(0);
+        Assert.assertEquals(Bean.class.getName(), bean.getName());
+        Assert.assertEquals(2, bean.getCount());
+        Assert.assertTrue(bean.getCompileNanos() > 0);
+
+        InjectionReport.Entry prop1 = null;
+        for (InjectionReport.Entry entry : report.getProperties()) {
+            if (entry.getName().endsWith("#prop1")) {
+                prop1 = entry;
+            }
+        }
+        Assert.assertNotNull(prop1);
+        Assert.assertEquals(2, prop1.getCount());
+        Assert.assertEquals(2, prop1.getConversions());
+        Assert.assertEquals(1, prop1.getCachedConversions()); // immutable String
+        Assert.assertTrue(report.getReport(0).contains(prop1.getName()));
+
+        // Disabled profiling records nothing
+        report.reset();
+        injector.setProfiler(null);
+        injector.inject(new Bean());
+        Assert.assertTrue(report.getClasses().isEmpty());
+    }
 }
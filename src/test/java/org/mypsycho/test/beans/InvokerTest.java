@@ -0,0 +1,119 @@
+package org.mypsycho.test.beans;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.beans.CachedInvoker;
+import org.mypsycho.beans.DefaultInvoker;
+import org.mypsycho.beans.Invoker;
+import org.mypsycho.beans.PropertyUtilsBean;
+import org.mypsycho.test.util.Benchmarks;
+
+
+/**
+ * Comparison of invokers.
+ *
+ * @author Peransin Nicolas
+ */
+public class InvokerTest {
+
+    static final int LOOPS = 200000;
+
+    public static class Bean {
+
+        String text;
+
+        int[] values = new int[4];
+
+        Map<String, Object> mapped = new HashMap<String, Object>();
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+
+        public int[] getValues() {
+            return values;
+        }
+
+        public void setValues(int[] values) {
+            this.values = values;
+        }
+
+        public Map<String, Object> getMapped() {
+            return mapped;
+        }
+
+        public void setMapped(Map<String, Object> mapped) {
+            this.mapped = mapped;
+        }
+    }
+
+    static class Utils extends PropertyUtilsBean {
+
+        Utils(Invoker invoker) {
+            setInvoker(invoker);
+        }
+    }
+
+    void check(PropertyUtilsBean utils) throws Exception {
+        Bean bean = new Bean();
+        utils.setProperty(bean, "text", "value");
+        utils.setProperty(bean, "values[2]", 5);
+        utils.setProperty(bean, "mapped(key)", "mappedValue");
+
+        Assert.assertEquals("value", utils.getProperty(bean, "text"));
+        Assert.assertEquals(5, utils.getProperty(bean, "values[2]"));
+        Assert.assertEquals("mappedValue", utils.getProperty(bean, "mapped(key)"));
+    }
+
+    @Test
+    public void testMapGetter() throws Exception {
+        // A mapped property without keyed accessors uses the Map of its getter
+        Bean bean = new Bean();
+        new Utils(DefaultInvoker.getInstance()).setProperty(bean, "mapped(key)", "mappedValue");
+        Assert.assertEquals("mappedValue", bean.getMapped().get("key"));
+    }
+
+    @Test
+    public void testCompare() throws Exception {
+        PropertyUtilsBean reference = new Utils(DefaultInvoker.getInstance());
+        CachedInvoker invoker = new CachedInvoker();
+        PropertyUtilsBean cached = new Utils(invoker);
+
+        check(reference);
+        check(cached);
+
+        Assert.assertTrue(invoker.getAccessorsCache().getSize() > 0);
+        Assert.assertTrue(invoker.getAccessorsCache().isWeakKeys());
+    }
+
+    long measure(PropertyUtilsBean utils) throws Exception {
+        Bean bean = new Bean();
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOPS; i++) {
+            utils.setSimpleProperty(bean, "text", "value");
+            utils.getSimpleProperty(bean, "text");
+            utils.getIndexedProperty(bean, "values", 1);
+        }
+        return Benchmarks.elapsed(start);
+    }
+
+    @Test
+    public void benchmarkInvokers() throws Exception {
+        Benchmarks.assumeEnabled();
+        PropertyUtilsBean reference = new Utils(DefaultInvoker.getInstance());
+        PropertyUtilsBean cached = new Utils(new CachedInvoker());
+
+        // warm up then measure
+        measure(reference);
+        measure(cached);
+        System.out.println("DefaultInvoker: " + measure(reference) + " ms, CachedInvoker: "
+                + measure(cached) + " ms for " + LOOPS + " loops");
+    }
+}
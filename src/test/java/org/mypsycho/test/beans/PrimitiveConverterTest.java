@@ -0,0 +1,87 @@
+package org.mypsycho.test.beans;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.beans.converter.ConverterContainer;
+import org.mypsycho.beans.converter.PrimitiveConverter;
+import org.mypsycho.test.util.Benchmarks;
+
+
+/**
+ * Conversion of primitive values.
+ *
+ * @author Peransin Nicolas
+ */
+public class PrimitiveConverterTest {
+
+    @Test
+    public void testPrimitives() {
+        ConverterContainer converter = new ConverterContainer();
+        Assert.assertEquals(30, converter.convert(Integer.TYPE, "0x1e", null));
+        Assert.assertEquals(-7L, converter.convert(Long.class, "-7", null));
+        Assert.assertEquals((short) 3, converter.convert(Short.TYPE, "3", null));
+        Assert.assertEquals(Boolean.TRUE, converter.convert(Boolean.TYPE, "true", null));
+        Assert.assertEquals(1.5f, converter.convert(Float.TYPE, "1.5", null));
+        Assert.assertEquals(2.5d, converter.convert(Double.class, "2.5", null));
+        Assert.assertEquals('x', converter.convert(Character.TYPE, "x", null));
+        Assert.assertEquals('y', converter.convert(Character.class, " y ", null));
+
+        // Defaults
+        Assert.assertEquals(0, converter.convert(Integer.TYPE, null, null));
+        Assert.assertNull(converter.convert(Integer.class, null, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNumber() {
+        new ConverterContainer().convert(Integer.TYPE, "ten", null);
+    }
+
+    @Test
+    public void testInvalidCharacter() {
+        ConverterContainer converter = new ConverterContainer();
+        for (String value : new String[] { "xy", "", "  " }) {
+            try {
+                converter.convert(Character.TYPE, value, null);
+                Assert.fail("'" + value + "' converted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testCompareReflection() {
+        // parseInt is only known by reflection
+        PrimitiveConverter reflect = new PrimitiveConverter(Integer.class, "parseInt", 0);
+        PrimitiveConverter direct = new PrimitiveConverter(Integer.class, "valueOf", 0);
+        for (String value : new String[] { "0", "-12", "2147483647" }) {
+            Assert.assertEquals(value, reflect.convert(Integer.TYPE, value, null),
+                    direct.convert(Integer.TYPE, value, null));
+        }
+    }
+
+    long parse(PrimitiveConverter converter, String[] values) {
+        long start = System.nanoTime();
+        for (int loop = 0; loop < 20; loop++) {
+            for (String value : values) {
+                converter.convert(Integer.TYPE, value, null);
+            }
+        }
+        return Benchmarks.elapsed(start);
+    }
+
+    @Test
+    public void benchmarkReflection() {
+        Benchmarks.assumeEnabled();
+        String[] values = new String[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = String.valueOf(i);
+        }
+
+        // parseInt is only known by reflection
+        long reflectTime = parse(new PrimitiveConverter(Integer.class, "parseInt", 0), values);
+        long directTime = parse(new PrimitiveConverter(Integer.class, "valueOf", 0), values);
+        System.out.println("Reflective parsing: " + reflectTime + " ms, direct parsing: "
+                + directTime + " ms for " + (20 * values.length) + " values");
+    }
+}
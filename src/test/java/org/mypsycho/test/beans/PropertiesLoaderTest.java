@@ -1,5 +1,10 @@
 package org.mypsycho.test.beans;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
@@ -72,6 +77,72 @@ public class PropertiesLoaderTest {
         Assert.assertEquals("$$1", props.get("e"));
     }
 
+    @Test
+    public void testSharedLayers() throws Exception {
+        PropertiesLoader loader = new PropertiesLoader();
+        Assert.assertEquals("value a", loader.getProperties(BeanA.class, Locale.ENGLISH).get("a"));
+        Map<String, String> props = loader.getProperties(BeanB.class, Locale.ENGLISH);
+        Assert.assertEquals("new a", props.get("a"));
+        Assert.assertEquals("new a and value b", props.get("b"));
+        Assert.assertEquals(7, props.size());
+
+        // Definitions of BeanA are read once
+        Assert.assertEquals(2, loader.getLayers().getSize());
+        Assert.assertEquals(1, loader.getLayers().getHits());
+    }
+
+    /** Loader reading a compiled bundle from memory. */
+    static class CompiledLoader extends PropertiesLoader {
+
+        final byte[] compiled;
+        int reads = 0;
+
+        CompiledLoader(byte[] compiled) {
+            this.compiled = compiled;
+        }
+
+        @Override
+        protected InputStream openCompiled(Class<?> type, Locale locale) {
+            reads++;
+            return new ByteArrayInputStream(compiled);
+        }
+    }
+
+    @Test
+    public void testCompiled() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new PropertiesLoader().writeCompiled(BeanB.class, Locale.FRANCE, output);
+
+        CompiledLoader loader = new CompiledLoader(output.toByteArray());
+        Map<String, String> props = loader.getProperties(BeanB.class, Locale.FRANCE);
+        Assert.assertEquals(1, loader.reads);
+        Assert.assertEquals("new valeur a", props.get("c"));
+        Assert.assertEquals("loop ${e}", props.get("e"));
+        Assert.assertEquals(
+                new HashMap<String, String>(new PropertiesLoader().getProperties(BeanB.class,
+                        Locale.FRANCE)), new HashMap<String, String>(props));
+
+        // Invalid compiled bundles are ignored
+        loader = new CompiledLoader(new byte[] { 1, 2, 3 });
+        props = loader.getProperties(BeanB.class, Locale.FRANCE);
+        Assert.assertEquals("new valeur a", props.get("c"));
+
+        // Corrupted lengths are ignored, header is magic, version and count
+        for (int length : new int[] { -1, Integer.MAX_VALUE }) {
+            ByteArrayOutputStream corrupted = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(corrupted);
+            out.write(output.toByteArray(), 0, 12);
+            out.writeInt(length);
+            loader = new CompiledLoader(corrupted.toByteArray());
+            Assert.assertEquals("new valeur a",
+                    loader.getProperties(BeanB.class, Locale.FRANCE).get("c"));
+        }
+        Assert.assertFalse(new PropertiesLoader().isCompiledBundles());
+        Assert.assertEquals("PropertiesLoaderTest$BeanB_fr_FR.bundle",
+                PropertiesLoader.getCompiledName(BeanB.class, Locale.FRANCE).substring(
+                        "org/mypsycho/test/beans/".length()));
+    }
+
     
     
 }
@@ -0,0 +1,148 @@
+package org.mypsycho.test.beans;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.beanutils.NestedNullException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.beans.PropertyPath;
+import org.mypsycho.beans.PropertyUtilsBean;
+
+
+/**
+ * Evaluation of parsed property paths.
+ *
+ * @author Peransin Nicolas
+ */
+public class PropertyPathTest {
+
+    public static class Node {
+
+        String text;
+
+        Node child;
+
+        List<Node> items = new ArrayList<Node>();
+
+        Map<String, Object> values = new HashMap<String, Object>();
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+
+        public Node getChild() {
+            return child;
+        }
+
+        public void setChild(Node child) {
+            this.child = child;
+        }
+
+        public List<Node> getItems() {
+            return items;
+        }
+
+        public void setItems(List<Node> items) {
+            this.items = items;
+        }
+
+        public Map<String, Object> getValues() {
+            return values;
+        }
+
+        public void setValues(Map<String, Object> values) {
+            this.values = values;
+        }
+    }
+
+    Node createTree() {
+        Node root = new Node();
+        root.child = new Node();
+        root.child.items.add(new Node());
+        root.child.items.add(new Node());
+        root.child.values.put("key", new Node());
+        return root;
+    }
+
+    @Test
+    public void testPaths() throws Exception {
+        PropertyUtilsBean utils = new PropertyUtilsBean();
+        Node root = createTree();
+
+        PropertyPath path = utils.getPropertyPath("child.items[1].text");
+        Assert.assertSame(path, utils.getPropertyPath("child.items[1].text"));
+        Assert.assertEquals(3, path.getLength());
+
+        utils.setProperty(root, path, "item");
+        Assert.assertEquals("item", root.child.items.get(1).text);
+        Assert.assertEquals("item", utils.getProperty(root, path));
+        Assert.assertEquals("item", utils.getProperty(root, "child.items[1].text"));
+
+        // Map bean then mapped property
+        utils.setProperty(root, utils.getPropertyPath("child.values.key.text"), "mapped");
+        Assert.assertEquals("mapped",
+                utils.getProperty(root, utils.getPropertyPath("child.values(key).text")));
+
+        // Another class on the same path
+        Node other = new Node() {};
+        other.child = root.child;
+        Assert.assertEquals("item", utils.getProperty(other, path));
+    }
+
+    @Test(expected = NestedNullException.class)
+    public void testNestedNull() throws Exception {
+        PropertyUtilsBean utils = new PropertyUtilsBean();
+        utils.getProperty(new Node(), utils.getPropertyPath("child.text"));
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void testUnknownProperty() throws Exception {
+        PropertyUtilsBean utils = new PropertyUtilsBean();
+        utils.getProperty(createTree(), utils.getPropertyPath("child.unknown"));
+    }
+
+    @Test
+    public void testConcurrentDescriptors() throws Exception {
+        final PropertyUtilsBean utils = new PropertyUtilsBean();
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 1000; i++) {
+                            Assert.assertNotNull(utils.getPropertyDescriptor(Node.class, "text"));
+                            Assert.assertNotNull(utils.getPropertyDescriptor(Node.class, "items"));
+                            try {
+                                utils.getPropertyDescriptor(Node.class, "missing" + (i % 10));
+                                Assert.fail();
+                            } catch (NoSuchMethodException expected) {
+                                // stub
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals("[]", failures.toString());
+        // Missing properties are not listed
+        Assert.assertEquals(5, utils.getPropertyDescriptors(Node.class).length);
+    }
+}
@@ -0,0 +1,249 @@
+package org.mypsycho.test.beans;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.apache.commons.collections.FastHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.beans.WeakFastHashMap;
+import org.mypsycho.test.util.Benchmarks;
+
+
+/**
+ * Behavior and concurrency of the weak map.
+ *
+ * @author Peransin Nicolas
+ */
+public class WeakFastHashMapTest {
+
+    static final int KEYS = 500;
+
+    @Test
+    public void testMap() {
+        WeakFastHashMap<String, String> map = new WeakFastHashMap<String, String>();
+        map.put("a", "1");
+        map.put(null, "null");
+        map.put("b", null);
+
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals("1", map.get("a"));
+        Assert.assertEquals("null", map.get(null));
+        Assert.assertNull(map.get("b"));
+        Assert.assertTrue(map.containsKey("b"));
+        Assert.assertTrue(map.containsValue(null));
+
+        Map<String, String> copy = new HashMap<String, String>(map);
+        Assert.assertEquals(copy, map);
+        Assert.assertEquals(map, copy);
+        Assert.assertEquals(copy.hashCode(), map.hashCode());
+
+        for (Iterator<String> i = map.keySet().iterator(); i.hasNext();) {
+            if ("a".equals(i.next())) {
+                i.remove();
+            }
+        }
+        Assert.assertFalse(map.containsKey("a"));
+        Assert.assertEquals(2, map.values().size());
+
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            e.setValue("x");
+        }
+        Assert.assertEquals("x", map.get("b"));
+    }
+
+    @Test
+    public void testJava8Methods() {
+        WeakFastHashMap<String, Integer> map = new WeakFastHashMap<String, Integer>();
+        Assert.assertTrue(map instanceof HashMap);
+        BiFunction<Integer, Integer, Integer> sum = new BiFunction<Integer, Integer, Integer>() {
+
+            @Override
+            public Integer apply(Integer a, Integer b) {
+                return a + b;
+            }
+        };
+
+        Assert.assertEquals(Integer.valueOf(1), map.computeIfAbsent("a",
+                new Function<String, Integer>() {
+
+                    @Override
+                    public Integer apply(String key) {
+                        return 1;
+                    }
+                }));
+        Assert.assertEquals(Integer.valueOf(3), map.merge("a", 2, sum));
+        Assert.assertEquals(Integer.valueOf(5), map.merge("b", 5, sum));
+        map.put("c", null);
+        Assert.assertEquals(Integer.valueOf(7), map.merge("c", 7, sum));
+        Assert.assertEquals(Integer.valueOf(4), map.compute("a",
+                new BiFunction<String, Integer, Integer>() {
+
+                    @Override
+                    public Integer apply(String key, Integer value) {
+                        return value + 1;
+                    }
+                }));
+        Assert.assertNull(map.computeIfPresent("b", new BiFunction<String, Integer, Integer>() {
+
+            @Override
+            public Integer apply(String key, Integer value) {
+                return null;
+            }
+        }));
+        Assert.assertFalse(map.containsKey("b"));
+
+        map.replaceAll(new BiFunction<String, Integer, Integer>() {
+
+            @Override
+            public Integer apply(String key, Integer value) {
+                return value * 10;
+            }
+        });
+        final Map<String, Integer> seen = new HashMap<String, Integer>();
+        map.forEach(new BiConsumer<String, Integer>() {
+
+            @Override
+            public void accept(String key, Integer value) {
+                seen.put(key, value);
+            }
+        });
+        Assert.assertEquals("{a=40, c=70}", new TreeMap<String, Integer>(seen).toString());
+        Assert.assertEquals(seen, map);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSerialization() throws Exception {
+        WeakFastHashMap<String, String> map = new WeakFastHashMap<String, String>();
+        map.put("a", "1");
+        map.put(null, null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(map);
+        out.close();
+        ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Map<String, String> copy = (Map<String, String>) in.readObject();
+
+        Assert.assertTrue(copy instanceof WeakFastHashMap);
+        Assert.assertEquals(map, copy);
+    }
+
+    @Test
+    public void testWeakKeys() throws Exception {
+        WeakFastHashMap<Object, String> map = new WeakFastHashMap<Object, String>();
+        Object kept = new Object();
+        map.put(kept, "kept");
+        for (int i = 0; i < 100; i++) {
+            map.put(new Object(), "lost");
+        }
+
+        for (int i = 0; (i < 50) && (map.size() > 1); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals("kept", map.get(kept));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final WeakFastHashMap<String, Integer> map = new WeakFastHashMap<String, Integer>();
+        final String[] keys = new String[KEYS];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i; // held strongly
+        }
+
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final boolean writer = (t % 2) == 0;
+            final long seed = t;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                        for (int i = 0; i < 20000; i++) {
+                            String key = keys[random.nextInt(keys.length)];
+                            if (writer) {
+                                if (random.nextInt(4) == 0) {
+                                    map.remove(key);
+                                } else {
+                                    map.put(key, key.length());
+                                }
+                            } else {
+                                Integer value = map.get(key);
+                                Assert.assertTrue((value == null) || (value == key.length()));
+                                if (i % 1000 == 0) {
+                                    for (Map.Entry<String, Integer> e : map.entrySet()) {
+                                        Assert.assertNotNull(e.getKey());
+                                    }
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals("[]", failures.toString());
+        Assert.assertTrue(map.size() <= KEYS);
+    }
+
+    long fill(Map<String, Object> map, String[] keys) {
+        long start = System.nanoTime();
+        for (String key : keys) {
+            map.put(key, key);
+        }
+        for (int loop = 0; loop < 20; loop++) {
+            for (String key : keys) {
+                map.get(key);
+            }
+        }
+        return Benchmarks.elapsed(start);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void benchmarkCloneOnWrite() {
+        Benchmarks.assumeEnabled();
+        String[] keys = new String[5000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+        }
+
+        FastHashMap cloning = new FastHashMap();
+        cloning.setFast(true);
+        long cloneTime = fill(cloning, keys);
+        long weakTime = fill(new WeakFastHashMap<String, Object>(), keys);
+        System.out.println("Clone on write: " + cloneTime + " ms, WeakFastHashMap: " + weakTime
+                + " ms for " + keys.length + " keys");
+    }
+}
@@ -1,7 +1,12 @@
 package org.mypsycho.test.text;
 
+import java.util.Locale;
+
+import org.apache.commons.beanutils.PropertyUtils;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mypsycho.beans.PropertyPath;
+import org.mypsycho.test.util.Benchmarks;
 import org.mypsycho.text.BeanMessageFormat;
 
 
@@ -106,4 +111,96 @@ public class BeanMessageFormatTest {
         Assert.assertEquals("Null in path", "int null", text);
     }
 
+    @Test
+    public void testReusedFormat() throws Exception {
+        BeanMessageFormat format = new BeanMessageFormat("{0.prop1} and {0.prop2.prop1}");
+        SimpleBean bean = new SimpleBean(1);
+        bean.setProp2(new SimpleBean(2));
+        StringBuilder text = new StringBuilder("> ");
+        format.format(new Object[] { bean }, text);
+        Assert.assertEquals("> 1 and 2", text.toString());
+        Assert.assertEquals("3 and null", format.format(new Object[] { new SimpleBean(3) }));
+    }
+
+    /** Format mapping properties with commons-beanutils, as formerly. */
+    static class CommonsFormat extends BeanMessageFormat {
+
+        private static final long serialVersionUID = 1L;
+
+        CommonsFormat(String pattern) {
+            super(pattern, Locale.ENGLISH);
+        }
+
+        @Override
+        protected Object map(Object bean, PropertyPath path) {
+            try {
+                return PropertyUtils.getProperty(bean, path.getExpression());
+            } catch (Exception e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+
+    /** Format overriding the textual mapping only. */
+    static class TextualFormat extends BeanMessageFormat {
+
+        private static final long serialVersionUID = 1L;
+
+        TextualFormat(String pattern) {
+            super(pattern, Locale.ENGLISH);
+        }
+
+        @Override
+        protected Object map(Object bean, String path) {
+            return "<" + path + ">";
+        }
+    }
+
+    @Test
+    public void testTextualMapping() throws Exception {
+        BeanMessageFormat format = new TextualFormat("{0.prop1} and {0.prop2.prop1}");
+        Object[] args = { new SimpleBean() };
+        Assert.assertEquals("<prop1> and <prop2.prop1>", format.format(args));
+        Assert.assertEquals("<prop1> and <prop2.prop1>", format.formatText(args));
+        Assert.assertEquals("10", new CommonsFormat("{0.prop1}").formatText(args));
+    }
+
+    @Test
+    public void testCompareCommons() throws Exception {
+        String pattern = "Task {1}: {0.prop1} done, {0.prop2.prop1} left";
+        SimpleBean bean = new SimpleBean(1);
+        bean.setProp2(new SimpleBean(2));
+        BeanMessageFormat commons = new CommonsFormat(pattern);
+        BeanMessageFormat format = new BeanMessageFormat(pattern, Locale.ENGLISH);
+        Assert.assertEquals(commons.format(new Object[] { bean, 7 }),
+                format.format(new Object[] { bean, 7 }));
+    }
+
+    static long format(BeanMessageFormat format, Object bean, int loops) {
+        StringBuilder text = new StringBuilder();
+        long start = System.nanoTime();
+        for (int i = 0; i < loops; i++) {
+            text.setLength(0);
+            format.format(new Object[] { bean, i }, text);
+        }
+        return Benchmarks.elapsed(start);
+    }
+
+    @Test
+    public void benchmarkCommons() throws Exception {
+        Benchmarks.assumeEnabled();
+        String pattern = "Task {1}: {0.prop1} done, {0.prop2.prop1} left";
+        SimpleBean bean = new SimpleBean(1);
+        bean.setProp2(new SimpleBean(2));
+        BeanMessageFormat commons = new CommonsFormat(pattern);
+        BeanMessageFormat format = new BeanMessageFormat(pattern, Locale.ENGLISH);
+
+        format(commons, bean, 5000); // warm up
+        format(format, bean, 5000);
+        long commonsTime = format(commons, bean, 50000);
+        long time = format(format, bean, 50000);
+        System.out.println("Commons properties: " + commonsTime + " ms, parsed paths: " + time
+                + " ms for 50000 messages");
+    }
+
 }
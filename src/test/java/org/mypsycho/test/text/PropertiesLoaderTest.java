@@ -1,10 +1,27 @@
 package org.mypsycho.test.text;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mypsycho.test.util.Benchmarks;
 import org.mypsycho.util.PropertiesLoader;
 
 
@@ -43,4 +60,294 @@ public class PropertiesLoaderTest {
         Assert.assertEquals("Title : foo fighter", props.get("message"));
 
     }
+
+    /** Loader exposing bundles of generated properties. */
+    static class GeneratedLoader extends PropertiesLoader {
+
+        File file = null;
+        ClassLoader resources = null;
+
+        Map<String, String> getBundle(String content) throws IOException {
+            if (file == null) {
+                File directory = File.createTempFile("generated", "");
+                directory.delete();
+                directory.mkdir();
+                directory.deleteOnExit();
+                file = new File(directory, "generated.properties");
+                file.deleteOnExit();
+                resources = new URLClassLoader(new URL[] { directory.toURI().toURL() });
+            }
+            FileOutputStream output = new FileOutputStream(file);
+            try {
+                output.write(content.getBytes("ISO-8859-1"));
+            } finally {
+                output.close();
+            }
+            return getBundle();
+        }
+
+        Map<String, String> getBundle() {
+            return getBundle("generated", Locale.ROOT, resources);
+        }
+
+        boolean isResolved(Map<String, String> bundle) {
+            return ((Bundle) bundle).isResolved();
+        }
+
+        String resolve(Map<String, String> bundle, String expr) {
+            return resolveExpression((Bundle) bundle, expr, new ArrayDeque<String>());
+        }
+    }
+
+    @Test
+    public void testParallelResolution() throws Exception {
+        StringBuilder content = new StringBuilder("k0=x\ncycle1=${cycle2}\ncycle2=${cycle1}\n");
+        String[] expecteds = new String[2000];
+        expecteds[0] = "x";
+        for (int i = 1; i < expecteds.length; i++) {
+            content.append('k').append(i).append("=${k").append(i / 2).append("}-").append(i)
+                    .append('\n');
+            expecteds[i] = expecteds[i / 2] + "-" + i;
+        }
+
+        GeneratedLoader loader = new GeneratedLoader();
+        loader.setParallelThreshold(50);
+        Map<String, String> props = loader.getBundle(content.toString());
+        Assert.assertEquals(expecteds.length + 2, props.values().size()); // resolve all
+        for (int i = 0; i < expecteds.length; i++) {
+            Assert.assertEquals(expecteds[i], props.get("k" + i));
+        }
+        // Cycle is broken on a reference met again
+        Assert.assertTrue(props.get("cycle1").matches("\\$\\{cycle[12]\\}"));
+    }
+
+    /** Loader substituting as the previous implementation, by string concatenation. */
+    static class ConcatLoader extends GeneratedLoader {
+
+        @Override
+        protected String resolveExpression(Bundle bundle, String expr, Deque<String> refStack) {
+            int vegas = 0;
+            for (int i = expr.indexOf(SUBST_TOKEN); i != -1; i = expr.indexOf(SUBST_TOKEN, i)) {
+                int escaping = 0;
+                while (((i - escaping) > vegas) && (expr.charAt(i - escaping - 1) == ESCAPE)) {
+                    escaping++;
+                }
+
+                if (escaping > 0) {
+                    String head = expr.substring(0, i - escaping);
+                    String tail = expr.substring(i);
+                    StringBuffer escaped = new StringBuffer();
+                    while (escaping > 1) {
+                        escaped.append(ESCAPE);
+                        escaping = escaping - 2;
+                    }
+                    expr = head + escaped + tail;
+                    vegas = head.length() + escaped.length();
+                    i = vegas;
+                    if (escaping == 1) {
+                        vegas++;
+                        i++;
+                        continue;
+                    }
+                }
+
+                int end = -1;
+                int position = i + SUBST_TOKEN.length();
+                int depth = 0;
+                while (end == -1) {
+                    int nextRef = expr.indexOf(SUBST_TOKEN, position);
+                    int nextEnd = expr.indexOf(END_TOKEN, position);
+                    if (nextEnd == -1) {
+                        return expr;
+                    } else if ((nextRef != -1) && (nextRef < nextEnd)) {
+                        depth++;
+                        position = nextRef + SUBST_TOKEN.length();
+                    } else if (depth > 0) {
+                        depth--;
+                        position = nextEnd + END_TOKEN.length();
+                    } else {
+                        end = nextEnd;
+                    }
+                }
+
+                String head = expr.substring(0, i);
+                String tail = expr.substring(end + END_TOKEN.length(), expr.length());
+                String var = resolveExpression(bundle,
+                        expr.substring(i + SUBST_TOKEN.length(), end), refStack);
+                String subst = resolveProperty(bundle, var, refStack);
+                expr = head + subst + tail;
+                i = head.length() + subst.length();
+                vegas = i;
+            }
+            return expr;
+        }
+    }
+
+    static long resolve(GeneratedLoader loader, Map<String, String> bundle, String expr,
+            int loops) {
+        long start = System.nanoTime();
+        for (int loop = 0; loop < loops; loop++) {
+            loader.resolve(bundle, expr);
+        }
+        return Benchmarks.elapsed(start);
+    }
+
+    @Test
+    public void testExpressions() throws Exception {
+        String[] tokens = { "$", "$", "${", "}", "{", "a", "b", "x" };
+        StringBuilder content = new StringBuilder("a=A\nab=AB\nb=${a}B\n");
+        Random random = new Random(7);
+        String[] exprs = new String[500];
+        for (int i = 0; i < exprs.length; i++) {
+            StringBuilder expr = new StringBuilder();
+            for (int length = random.nextInt(12); length > 0; length--) {
+                expr.append(tokens[random.nextInt(tokens.length)]);
+            }
+            exprs[i] = expr.toString();
+            content.append('e').append(i).append('=').append(exprs[i]).append('\n');
+        }
+
+        Map<String, String> expecteds = new ConcatLoader().getBundle(content.toString());
+        Map<String, String> props = new GeneratedLoader().getBundle(content.toString());
+        for (int i = 0; i < exprs.length; i++) {
+            Assert.assertEquals(exprs[i], expecteds.get("e" + i), props.get("e" + i));
+        }
+
+        Assert.assertEquals("AB", props.get("b"));
+        GeneratedLoader loader = new GeneratedLoader();
+        Map<String, String> bundle = loader.getBundle(content.toString());
+        Assert.assertEquals("$A-${a}-$$${a}-${aAB}-AB",
+                loader.resolve(bundle, "$$${a}-$${a}-$$$$$${a}-${a${b}}-${b?}"));
+        Assert.assertEquals("A-${a", loader.resolve(bundle, "${a}-${a"));
+    }
+
+    @Test
+    public void testCompareConcatenation() throws Exception {
+        StringBuilder expr = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            expr.append("${a}, $${b}, ");
+        }
+        GeneratedLoader concatLoader = new ConcatLoader();
+        Map<String, String> concatBundle = concatLoader.getBundle("a=A\nb=B\n");
+        GeneratedLoader loader = new GeneratedLoader();
+        Map<String, String> bundle = loader.getBundle("a=A\nb=B\n");
+        Assert.assertEquals(concatLoader.resolve(concatBundle, expr.toString()),
+                loader.resolve(bundle, expr.toString()));
+    }
+
+    @Test
+    public void benchmarkConcatenation() throws Exception {
+        Benchmarks.assumeEnabled();
+        StringBuilder expr = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            expr.append("${a}, $${b}, ");
+        }
+        GeneratedLoader concatLoader = new ConcatLoader();
+        Map<String, String> concatBundle = concatLoader.getBundle("a=A\nb=B\n");
+        GeneratedLoader loader = new GeneratedLoader();
+        Map<String, String> bundle = loader.getBundle("a=A\nb=B\n");
+
+        long concatTime = resolve(concatLoader, concatBundle, expr.toString(), 200);
+        long time = resolve(loader, bundle, expr.toString(), 200);
+        System.out.println("Concatenation: " + concatTime + " ms, single pass: " + time
+                + " ms for 200 values of 1000 references");
+    }
+
+    @Test
+    public void testLazyResolution() throws Exception {
+        StringBuilder content = new StringBuilder("k0=x\n");
+        String[] expecteds = new String[5000];
+        expecteds[0] = "x";
+        for (int i = 1; i < expecteds.length; i++) {
+            content.append('k').append(i).append("=${k").append(i / 2).append("}-").append(i)
+                    .append('\n');
+            expecteds[i] = expecteds[i / 2] + "-" + i;
+        }
+
+        GeneratedLoader loader = new GeneratedLoader();
+        loader.setLazyResolution(true);
+        final Map<String, String> props = loader.getBundle(content.toString());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(expecteds[i], props.get("k" + i));
+        }
+        Assert.assertFalse(loader.isResolved(props));
+
+        // Concurrent first accesses publish the same value
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Callable<String> reader = new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+                    return props.get("k300");
+                }
+            };
+            List<Future<String>> values = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                values.add(executor.submit(reader));
+            }
+            for (Future<String> value : values) {
+                Assert.assertEquals(expecteds[300], value.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        loader = new GeneratedLoader();
+        Map<String, String> eagers = loader.getBundle(content.toString());
+        Assert.assertEquals(5000, eagers.values().size());
+        Assert.assertTrue(loader.isResolved(eagers));
+    }
+
+    @Test
+    public void benchmarkLazyResolution() throws Exception {
+        Benchmarks.assumeEnabled();
+        StringBuilder content = new StringBuilder("k0=x\n");
+        for (int i = 1; i < 5000; i++) {
+            content.append('k').append(i).append("=${k").append(i / 2).append("}-").append(i)
+                    .append('\n');
+        }
+
+        GeneratedLoader loader = new GeneratedLoader();
+        loader.setLazyResolution(true);
+        long start = System.nanoTime();
+        Map<String, String> props = loader.getBundle(content.toString());
+        for (int i = 0; i < 5; i++) {
+            props.get("k" + i);
+        }
+        long lazyTime = Benchmarks.elapsed(start);
+
+        loader = new GeneratedLoader();
+        start = System.nanoTime();
+        Map<String, String> eagers = loader.getBundle(content.toString());
+        eagers.values().size();
+        long eagerTime = Benchmarks.elapsed(start);
+        System.out.println("Lazy access to 5 keys: " + lazyTime + " ms, eager resolution: "
+                + eagerTime + " ms for 5000 keys");
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        GeneratedLoader loader = new GeneratedLoader();
+        loader.setWatchPeriod(60000L); // checked by the test
+        final List<Set<String>> changes = new ArrayList<Set<String>>();
+        loader.addReloadListener(new PropertiesLoader.ReloadListener() {
+
+            @Override
+            public void bundlesChanged(Set<String> basenames) {
+                changes.add(basenames);
+            }
+        });
+
+        Assert.assertEquals("first", loader.getBundle("label=first\n").get("label"));
+        Assert.assertTrue(loader.checkChanges().isEmpty());
+        Assert.assertEquals("first", loader.getBundle().get("label"));
+
+        loader.getBundle("label=second\n");
+        loader.file.setLastModified(loader.file.lastModified() + 2000L);
+        Assert.assertEquals(Collections.singleton("generated"), loader.checkChanges());
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals("second", loader.getBundle().get("label"));
+        loader.setWatchPeriod(0);
+    }
 }
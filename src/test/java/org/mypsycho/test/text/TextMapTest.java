@@ -0,0 +1,112 @@
+package org.mypsycho.test.text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.test.text.BeanMessageFormatTest.SimpleBean;
+import org.mypsycho.test.text.EnumMessageTest.TestedMessage;
+import org.mypsycho.test.util.Benchmarks;
+import org.mypsycho.text.BeanMessageFormat;
+import org.mypsycho.text.BeanTextMap;
+import org.mypsycho.text.EnumTextMap;
+import org.mypsycho.text.TextMap;
+
+
+/**
+ * Formatting of messages with compiled formats.
+ *
+ * @author Peransin Nicolas
+ */
+public class TextMapTest {
+
+    static final String PROGRESS = "{0.prop1,choice,0#nothing|1#one item|1<{0.prop1} items} of {1}";
+
+    @Test
+    public void testCompiledFormats() {
+        TextMap texts = new BeanTextMap(Locale.ENGLISH);
+        texts.put("progress", PROGRESS);
+        Assert.assertEquals("one item of 3", texts.get("progress", new SimpleBean(1), 3));
+        Assert.assertEquals("2 items of 3", texts.get("progress", new SimpleBean(2), 3));
+
+        // Modified pattern
+        texts.put("progress", "{1}: {0.prop1}");
+        Assert.assertEquals("3: 2", texts.get("progress", new SimpleBean(2), 3));
+
+        EnumTextMap messages = new EnumTextMap(Locale.ENGLISH);
+        Assert.assertEquals("x and y", messages.get(TestedMessage.m2, "x", "y"));
+        Assert.assertEquals("z and y", messages.get(TestedMessage.m2, "z", "y"));
+    }
+
+    @Test
+    public void testConcurrentFormats() throws Exception {
+        final TextMap texts = new TextMap(Locale.ENGLISH);
+        texts.put("count", "{0,number,#} of {1,number,#}");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 8; t++) {
+                final int offset = t * 1000;
+                results.add(executor.submit(new Callable<Boolean>() {
+
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int i = offset; i < offset + 1000; i++) {
+                            if (!(i + " of " + (i % 7)).equals(texts.get("count", i, i % 7))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompareCompilation() {
+        TextMap texts = new BeanTextMap(Locale.ENGLISH);
+        texts.put("progress", PROGRESS);
+        for (int i = 0; i < 3; i++) {
+            SimpleBean bean = new SimpleBean(i);
+            Assert.assertEquals(
+                    new BeanMessageFormat(PROGRESS, Locale.ENGLISH).format(new Object[] { bean, 5 }),
+                    texts.get("progress", bean, 5));
+        }
+    }
+
+    @Test
+    public void benchmarkCompilation() {
+        Benchmarks.assumeEnabled();
+        TextMap texts = new BeanTextMap(Locale.ENGLISH);
+        texts.put("progress", PROGRESS);
+        SimpleBean bean = new SimpleBean(5);
+        int loops = 20000;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < loops; i++) {
+            new BeanMessageFormat(PROGRESS, Locale.ENGLISH).format(new Object[] { bean, i });
+        }
+        long compileTime = Benchmarks.elapsed(start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < loops; i++) {
+            texts.get("progress", bean, i);
+        }
+        long cachedTime = Benchmarks.elapsed(start);
+        System.out.println("Compiled per call: " + compileTime + " ms, cached: " + cachedTime
+                + " ms for " + loops + " messages");
+    }
+}
@@ -0,0 +1,38 @@
+package org.mypsycho.test.util;
+
+import org.junit.Assume;
+
+
+/**
+ * Opt-in measurements of the tests.
+ * <p>
+ * Benchmarks only run when the <code>benchmarks</code> system property is
+ * true, as set by the <code>benchmarks</code> profile. They print their times
+ * and assert nothing about them.
+ * </p>
+ *
+ * @author Peransin Nicolas
+ */
+public final class Benchmarks {
+
+    public static final String PROPERTY = "benchmarks";
+
+    private Benchmarks() {}
+
+    /**
+     * Skips the calling test unless benchmarks are enabled.
+     */
+    public static void assumeEnabled() {
+        Assume.assumeTrue(Boolean.getBoolean(PROPERTY));
+    }
+
+    /**
+     * Returns the milliseconds elapsed since a start.
+     *
+     * @param start start as given by {@link System#nanoTime()}
+     * @return the elapsed time
+     */
+    public static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1000000L;
+    }
+}
@@ -0,0 +1,111 @@
+package org.mypsycho.test.util;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mypsycho.util.CachePolicy;
+import org.mypsycho.util.PolicyCache;
+
+
+/**
+ * Tests of cache policies.
+ *
+ * @author Peransin Nicolas
+ */
+public class PolicyCacheTest {
+
+    @Test
+    public void testUnbounded() {
+        PolicyCache<String, String> cache = new CachePolicy().createCache();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertNull(cache.putIfAbsent("k" + i, "v" + i));
+        }
+        Assert.assertEquals("v1", cache.putIfAbsent("k1", "other"));
+        Assert.assertEquals("v50", cache.get("k50"));
+        Assert.assertNull(cache.get("k100"));
+
+        Assert.assertEquals(100, cache.getSize());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testLeastRecentlyUsed() {
+        PolicyCache<String, String> cache =
+                new CachePolicy(3, CachePolicy.Strength.STRONG).createCache();
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a"); // b is now the eldest
+        cache.put("d", "4");
+
+        Assert.assertEquals(3, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertEquals("4", cache.get("d"));
+    }
+
+    @Test
+    public void testSegments() {
+        CachePolicy policy = new CachePolicy(1000, CachePolicy.Strength.STRONG);
+        policy.setWeakKeys(true);
+        PolicyCache<Integer, String> cache = policy.createCache();
+        Integer[] keys = new Integer[2000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Integer.valueOf(i + 1000); // not from the Integer cache
+            cache.put(keys[i], "v" + i);
+        }
+
+        Assert.assertEquals(1000, cache.getSize());
+        Assert.assertEquals(1000, cache.getEvictions());
+        Assert.assertEquals("v1999", cache.get(Integer.valueOf(2999)));
+        Assert.assertEquals("v1999", cache.remove(Integer.valueOf(2999)));
+        Assert.assertEquals(999, cache.keys().size());
+    }
+
+    @Test
+    public void testWeakValues() throws Exception {
+        PolicyCache<String, Object> cache =
+                new CachePolicy(0, CachePolicy.Strength.WEAK).createCache();
+        Object kept = new Object();
+        cache.put("kept", kept);
+        cache.put("lost", new Object());
+
+        for (int i = 0; (i < 50) && (cache.getSize() > 1); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, cache.getSize());
+        Assert.assertEquals(1, cache.getCollected());
+        Assert.assertSame(kept, cache.get("kept"));
+    }
+
+    void checkWeakKeys(int maxEntries) throws Exception {
+        CachePolicy policy = new CachePolicy(maxEntries, CachePolicy.Strength.STRONG);
+        policy.setWeakKeys(true);
+        PolicyCache<String, String> cache = policy.createCache();
+        String kept = new String("kept");
+        cache.put(kept, "1");
+        cache.put(new String("lost"), "2");
+        Assert.assertEquals("1", cache.get("kept")); // keys are compared with equals
+
+        for (int i = 0; (i < 50) && (cache.getSize() > 1); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, cache.getSize());
+        Assert.assertEquals(1, cache.getCollected());
+        Assert.assertEquals(Collections.singletonList(kept), cache.keys());
+        Assert.assertEquals("1", cache.remove("kept"));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testWeakKeys() throws Exception {
+        checkWeakKeys(0);
+        checkWeakKeys(10);
+    }
+}